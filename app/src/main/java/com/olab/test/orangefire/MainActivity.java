@@ -1,6 +1,5 @@
 package com.olab.test.orangefire;
 
-import android.graphics.Color;
 import android.os.Handler;
 import android.os.SystemClock;
 import android.support.v4.app.FragmentActivity;
@@ -11,6 +10,7 @@ import android.view.animation.Interpolator;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.olab.orangefire_lib.CellCache;
 import com.olab.orangefire_lib.GeoFire;
 import com.olab.orangefire_lib.GeoLocation;
 import com.olab.orangefire_lib.GeoQuery;
@@ -27,6 +27,7 @@ import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.*;
 
+import java.io.File;
 import java.net.MalformedURLException;
 import java.util.HashMap;
 import java.util.Map;
@@ -41,8 +42,10 @@ public class MainActivity extends FragmentActivity implements GeoQueryEventListe
     private GeoQuery geoQuery;
 
     private GoogleMap map;
-    private Circle searchCircle;
     private static final int INITIAL_ZOOM_LEVEL = 14;
+    private static final long REPLAN_QUIET_PERIOD_MS = 100;
+    private static final long REPLAN_MAX_DELAY_MS = 500;
+    private static final String CELL_CACHE_FILE = "orangefire-cells";
     private Map<String,Marker> markers;
     //  replace both maps with single multimap
     private Map<Marker,String> markersInfo;
@@ -56,9 +59,6 @@ public class MainActivity extends FragmentActivity implements GeoQueryEventListe
         SupportMapFragment mapFragment = (SupportMapFragment)getSupportFragmentManager().findFragmentById(R.id.map);
         this.map = mapFragment.getMap();
         LatLng latLngCenter = new LatLng(INITIAL_CENTER.latitude, INITIAL_CENTER.longitude);
-        this.searchCircle = this.map.addCircle(new CircleOptions().center(latLngCenter).radius(1000));
-        this.searchCircle.setFillColor(Color.argb(66, 255, 0, 255));
-        this.searchCircle.setStrokeColor(Color.argb(66, 0, 0, 0));
         this.map.moveCamera(CameraUpdateFactory.newLatLngZoom(latLngCenter, INITIAL_ZOOM_LEVEL));
         this.map.setOnCameraChangeListener(this);
 
@@ -71,7 +71,11 @@ public class MainActivity extends FragmentActivity implements GeoQueryEventListe
             e.printStackTrace();
         }
         this.geoFire = new GeoFire(myRef);
+        // markers of the cells seen at the last runs show up at once, before the network answers
+        this.geoFire.setCellCache(new CellCache(new File(getFilesDir(), CELL_CACHE_FILE)));
         this.geoQuery = this.geoFire.queryAtLocation(INITIAL_CENTER, 1);
+        // camera changes arrive every frame, re-plan once the camera settles
+        this.geoQuery.setReplanDelay(REPLAN_QUIET_PERIOD_MS, REPLAN_MAX_DELAY_MS);
 
         // setup markers
         this.markers = new HashMap<String, Marker>();
@@ -155,21 +159,12 @@ public class MainActivity extends FragmentActivity implements GeoQueryEventListe
         });
     }
 
-    private double zoomLevelToRadius(double zoomLevel) {
-        // Approximation to fit circle into view
-        return 16384000/Math.pow(2, zoomLevel);
-    }
-
     @Override
     public void onCameraChange(CameraPosition cameraPosition) {
-        // Update the search criteria for this geoQuery and the circle on the map
-        LatLng center = cameraPosition.target;
-        double radius = zoomLevelToRadius(cameraPosition.zoom);
-        this.searchCircle.setCenter(center);
-        this.searchCircle.setRadius(radius);
-        this.geoQuery.setCenter(new GeoLocation(center.latitude, center.longitude));
-        // radius in km
-        this.geoQuery.setRadius(radius/1000);
+        // Query exactly the visible region, it crosses the antimeridian when its west edge is east of its east edge
+        LatLngBounds bounds = this.map.getProjection().getVisibleRegion().latLngBounds;
+        this.geoQuery.setBoundingBox(new GeoLocation(bounds.southwest.latitude, bounds.southwest.longitude),
+                new GeoLocation(bounds.northeast.latitude, bounds.northeast.longitude));
     }
 
 
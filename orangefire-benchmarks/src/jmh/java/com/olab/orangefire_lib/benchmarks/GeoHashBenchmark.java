@@ -0,0 +1,74 @@
+package com.olab.orangefire_lib.benchmarks;
+
+import com.olab.orangefire_lib.core.GeoHash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//  Cost of hashing incoming locations, as done for every write and every child event.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeoHashBenchmark {
+
+    private static final int POINTS = 1024;
+
+    @Param({"0", "45", "60", "80"})
+    public double latitude;
+
+    @Param({"6", "12"})
+    public int precision;
+
+    private final double[] latitudes = new double[POINTS];
+    private final double[] longitudes = new double[POINTS];
+    private int index;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < POINTS; i++) {
+            // points scattered around the benchmark latitude, roughly a city size apart
+            latitudes[i] = Math.max(-90, Math.min(90, latitude + (random.nextDouble() - 0.5) * 0.2));
+            longitudes[i] = 2.35 + (random.nextDouble() - 0.5) * 0.2;
+        }
+    }
+
+    private int next() {
+        index = (index + 1) & (POINTS - 1);
+        return index;
+    }
+
+    @Benchmark
+    public String newGeoHashString() {
+        int i = next();
+        return new GeoHash(latitudes[i], longitudes[i], precision).getGeoHashString();
+    }
+
+    @Benchmark
+    public GeoHash newGeoHash() {
+        int i = next();
+        return new GeoHash(latitudes[i], longitudes[i], precision);
+    }
+
+    @Benchmark
+    public long encode() {
+        int i = next();
+        return GeoHash.encode(latitudes[i], longitudes[i], precision);
+    }
+
+    @Benchmark
+    public void neighbors(Blackhole blackhole) {
+        int i = next();
+        blackhole.consume(new GeoHash(latitudes[i], longitudes[i], precision).getNeighbors());
+    }
+}
@@ -0,0 +1,101 @@
+package com.olab.orangefire_lib.benchmarks;
+
+import com.olab.orangefire_lib.GeoLocation;
+import com.olab.orangefire_lib.core.CellRange;
+import com.olab.orangefire_lib.core.CircleCover;
+import com.olab.orangefire_lib.core.GeoHash;
+import com.olab.orangefire_lib.core.GeoHashQuery;
+import com.olab.orangefire_lib.util.Base32Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+//  Cost of planning a query: choosing the geohash ranges and expanding them to the subscribed cells.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeoHashQueryBenchmark {
+
+    // radius in meters, from a street to a region
+    @Param({"100", "1000", "10000", "100000", "500000"})
+    public double radius;
+
+    @Param({"0", "45", "60", "80"})
+    public double latitude;
+
+    private GeoLocation center;
+    private List<GeoHashQuery> queries;
+
+    @Setup
+    public void setup() {
+        center = new GeoLocation(latitude, 2.35);
+        queries = new ArrayList<GeoHashQuery>(GeoHashQuery.queriesAtLocation(center, radius));
+    }
+
+    @Benchmark
+    public Set<GeoHashQuery> queriesAtLocation() {
+        return GeoHashQuery.queriesAtLocation(center, radius);
+    }
+
+    @Benchmark
+    public void getGeohashSet(Blackhole blackhole) throws Exception {
+        for (GeoHashQuery query : queries) {
+            blackhole.consume(query.GetGeohashSet());
+        }
+    }
+
+    @Benchmark
+    public CircleCover circleCover() {
+        return CircleCover.atLocation(center, radius, GeoHash.DEFAULT_PRECISION);
+    }
+
+    @Benchmark
+    public long countCells() {
+        long count = 0;
+        for (GeoHashQuery query : queries) {
+            count += query.getCellRange(GeoHash.DEFAULT_PRECISION).count();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long walkCellRanges() {
+        long sum = 0;
+        for (GeoHashQuery query : queries) {
+            CellRange range = query.getCellRange(GeoHash.DEFAULT_PRECISION);
+            for (long cell = range.getFirst(); cell <= range.getLast(); cell++) {
+                sum += cell;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void generateHashesFromTo(Blackhole blackhole) {
+        for (GeoHashQuery query : queries) {
+            // only ranges coarser than the stored precision are expanded this way
+            if (query.getStartValue().length() < GeoHash.DEFAULT_PRECISION) {
+                blackhole.consume(Base32Utils.GenerateHashesFromTo(query.getStartValue(), query.getEndValue()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void planAndExpand(Blackhole blackhole) throws Exception {
+        for (GeoHashQuery query : GeoHashQuery.queriesAtLocation(center, radius)) {
+            blackhole.consume(query.GetGeohashSet());
+        }
+    }
+}
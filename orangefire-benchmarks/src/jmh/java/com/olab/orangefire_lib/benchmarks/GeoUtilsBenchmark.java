@@ -0,0 +1,69 @@
+package com.olab.orangefire_lib.benchmarks;
+
+import com.olab.orangefire_lib.util.CircleFilter;
+import com.olab.orangefire_lib.util.GeoUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//  Cost of the membership test run for every key on every update.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeoUtilsBenchmark {
+
+    private static final int POINTS = 1024;
+
+    // radius in meters of the area the points are scattered in
+    @Param({"100", "1000", "10000", "100000", "500000"})
+    public double radius;
+
+    @Param({"0", "45", "60", "80"})
+    public double latitude;
+
+    private final double[] latitudes = new double[POINTS];
+    private final double[] longitudes = new double[POINTS];
+    private final boolean[] membership = new boolean[POINTS];
+    private CircleFilter circleFilter;
+    private int index;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        double latitudeDelta = GeoUtils.distanceToLatitudeDegrees(radius);
+        double longitudeDelta = GeoUtils.distanceToLongitudeDegrees(radius, latitude);
+        for (int i = 0; i < POINTS; i++) {
+            latitudes[i] = Math.max(-90, Math.min(90, latitude + (random.nextDouble() * 2 - 1) * latitudeDelta));
+            longitudes[i] = GeoUtils.wrapLongitude(2.35 + (random.nextDouble() * 2 - 1) * longitudeDelta);
+        }
+        // half of the scatter radius, so both the bounding box and the exact test reject points
+        circleFilter = new CircleFilter(latitude, 2.35, radius / 2);
+    }
+
+    @Benchmark
+    public double distance() {
+        index = (index + 1) & (POINTS - 1);
+        return GeoUtils.distance(latitude, 2.35, latitudes[index], longitudes[index]);
+    }
+
+    @Benchmark
+    public boolean circleFilter() {
+        index = (index + 1) & (POINTS - 1);
+        return circleFilter.contains(latitudes[index], longitudes[index]);
+    }
+
+    // all points at once, divide by POINTS for the cost per point
+    @Benchmark
+    public int circleFilterBatch() {
+        return circleFilter.containsAll(latitudes, longitudes, POINTS, membership);
+    }
+}
@@ -0,0 +1,63 @@
+package com.olab.orangefire_lib.benchmarks;
+
+import com.olab.orangefire_lib.GeoLocation;
+import com.olab.orangefire_lib.util.LocationCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//  Cost of decoding the location of every child event, compact strings against [latitude, longitude] arrays.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LocationCodecBenchmark {
+
+    private static final int POINTS = 1024;
+
+    private final String[] encoded = new String[POINTS];
+    private final List<?>[] arrays = new List<?>[POINTS];
+    private int index;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < POINTS; i++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            encoded[i] = LocationCodec.encode(latitude, longitude);
+            arrays[i] = Arrays.asList(latitude, longitude);
+        }
+    }
+
+    @Benchmark
+    public String encode() {
+        index = (index + 1) & (POINTS - 1);
+        GeoLocation location = new GeoLocation(((Number) arrays[index].get(0)).doubleValue(),
+                ((Number) arrays[index].get(1)).doubleValue());
+        return LocationCodec.encode(location);
+    }
+
+    @Benchmark
+    public GeoLocation decodeCompact() {
+        index = (index + 1) & (POINTS - 1);
+        return LocationCodec.decode(encoded[index]);
+    }
+
+    // the list stands for the parsed JSON array, the cost of parsing the JSON text itself is not included
+    @Benchmark
+    public GeoLocation decodeArray() {
+        index = (index + 1) & (POINTS - 1);
+        List<?> array = arrays[index];
+        return new GeoLocation(((Number) array.get(0)).doubleValue(), ((Number) array.get(1)).doubleValue());
+    }
+}
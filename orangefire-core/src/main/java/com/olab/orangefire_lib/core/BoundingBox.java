@@ -0,0 +1,78 @@
+package com.olab.orangefire_lib.core;
+
+//  Rectangular area between two latitudes and two longitudes, e.g. the area covered by a geohash cell. A box whose
+//  minimal longitude is larger than its maximal longitude crosses the antimeridian.
+public class BoundingBox {
+    public final double minLatitude;
+    public final double minLongitude;
+    public final double maxLatitude;
+    public final double maxLongitude;
+
+    public BoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLatitude = maxLatitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    /**
+     * @return True if the box spans the antimeridian, from minLongitude eastwards to maxLongitude.
+     */
+    public boolean crossesAntimeridian() {
+        return this.minLongitude > this.maxLongitude;
+    }
+
+    /**
+     * Tests a point with comparisons only, borders belong to the box.
+     * @param latitude Latitude of the point
+     * @param longitude Longitude of the point
+     * @return True if the point is inside the box.
+     */
+    public boolean contains(double latitude, double longitude) {
+        if (latitude < this.minLatitude || latitude > this.maxLatitude) {
+            return false;
+        }
+        if (crossesAntimeridian()) {
+            return longitude >= this.minLongitude || longitude <= this.maxLongitude;
+        }
+        return longitude >= this.minLongitude && longitude <= this.maxLongitude;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BoundingBox that = (BoundingBox) o;
+
+        return Double.compare(that.minLatitude, minLatitude) == 0 &&
+                Double.compare(that.minLongitude, minLongitude) == 0 &&
+                Double.compare(that.maxLatitude, maxLatitude) == 0 &&
+                Double.compare(that.maxLongitude, maxLongitude) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result;
+        long temp;
+        temp = Double.doubleToLongBits(minLatitude);
+        result = (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(minLongitude);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(maxLatitude);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(maxLongitude);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundingBox{" +
+                "minLatitude=" + minLatitude +
+                ", minLongitude=" + minLongitude +
+                ", maxLatitude=" + maxLatitude +
+                ", maxLongitude=" + maxLongitude +
+                '}';
+    }
+}
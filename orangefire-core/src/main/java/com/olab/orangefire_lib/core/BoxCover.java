@@ -0,0 +1,78 @@
+package com.olab.orangefire_lib.core;
+
+/**
+ * The cells of one precision intersecting a bounding box, as the sorted list of the fewest ranges of consecutive
+ * cells. Boxes crossing the antimeridian are covered on both of its sides.
+ */
+public final class BoxCover extends CellCover {
+
+    private final BoundingBox box;
+    private final double boxArea;
+
+    private BoxCover(BoundingBox box, int precision, long maxCells) {
+        super(precision, maxCells);
+        this.box = box;
+        double longitudeSpan = box.crossesAntimeridian()
+                ? 360 - box.minLongitude + box.maxLongitude
+                : box.maxLongitude - box.minLongitude;
+        this.boxArea = cellArea(box.minLatitude, box.maxLatitude, 0, longitudeSpan);
+        cover();
+    }
+
+    /**
+     * Computes the cells of a precision intersecting a bounding box.
+     * @param box The box to cover.
+     * @param precision Precision of the cells.
+     * @return The cover of the box.
+     */
+    public static BoxCover inBoundingBox(BoundingBox box, int precision) {
+        return new BoxCover(box, precision, Long.MAX_VALUE);
+    }
+
+    /**
+     * Computes the cells of a precision intersecting a bounding box, giving up as soon as more than a maximal number
+     * of cells is found.
+     * @param box The box to cover.
+     * @param precision Precision of the cells.
+     * @param maxCells Number of cells after which the cover is given up.
+     * @return The cover of the box, incomplete if it needs more than maxCells cells.
+     */
+    public static BoxCover inBoundingBox(BoundingBox box, int precision, long maxCells) {
+        return new BoxCover(box, precision, maxCells);
+    }
+
+    //  Cells never cross the antimeridian, so a cell overlaps a crossing box if it overlaps one of its two sides
+    @Override
+    boolean intersects(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        if (maxLatitude < this.box.minLatitude || minLatitude > this.box.maxLatitude) {
+            return false;
+        }
+        if (this.box.crossesAntimeridian()) {
+            return maxLongitude >= this.box.minLongitude || minLongitude <= this.box.maxLongitude;
+        }
+        return maxLongitude >= this.box.minLongitude && minLongitude <= this.box.maxLongitude;
+    }
+
+    @Override
+    boolean contains(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        if (minLatitude < this.box.minLatitude || maxLatitude > this.box.maxLatitude) {
+            return false;
+        }
+        if (this.box.crossesAntimeridian()) {
+            return minLongitude >= this.box.minLongitude || maxLongitude <= this.box.maxLongitude;
+        }
+        return minLongitude >= this.box.minLongitude && maxLongitude <= this.box.maxLongitude;
+    }
+
+    /**
+     * @return The area of the box in square meters.
+     */
+    public double getBoxArea() {
+        return this.boxArea;
+    }
+
+    @Override
+    double getArea() {
+        return this.boxArea;
+    }
+}
@@ -0,0 +1,190 @@
+package com.olab.orangefire_lib.core;
+
+import com.olab.orangefire_lib.util.Base32Utils;
+import com.olab.orangefire_lib.util.Constants;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The cells of one precision intersecting an area, as the sorted list of the fewest ranges of consecutive cells.
+ *
+ * The cells are found by descending the geohash tree one bit at a time in ascending order of the bits. A subtree
+ * whose area does not intersect the area is skipped, a subtree whose area lies entirely within the area is taken as
+ * one range without descending further. Ranges are therefore produced in order and merged with the previous one when
+ * adjacent, so only cells crossed by the border of the area are visited one by one.
+ */
+public abstract class CellCover {
+
+    // Earth's mean radius in meters, as in GeoUtils.distance
+    static final double EARTH_RADIUS = (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS) / 2;
+
+    private final int precision;
+    private final int numberOfBits;
+    private final long maxCells;
+
+    private long[] firsts = new long[16];
+    private long[] lasts = new long[16];
+    private int rangeCount;
+    private long cellCount;
+    private double coveredArea;
+    private boolean complete = true;
+
+    CellCover(int precision, long maxCells) {
+        if (precision < 1 || precision > GeoHash.MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision of a cell must be in the range [1, "
+                    + GeoHash.MAX_PRECISION + "]: " + precision);
+        }
+        this.precision = precision;
+        this.numberOfBits = precision * Base32Utils.BITS_PER_BASE32_CHAR;
+        this.maxCells = maxCells;
+    }
+
+    /**
+     * @return True if the area may intersect the given part of a cell, false only if it certainly does not.
+     */
+    abstract boolean intersects(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude);
+
+    /**
+     * @return True only if the given part of a cell certainly lies within the area.
+     */
+    abstract boolean contains(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude);
+
+    /**
+     * @return The size of the area to cover in square meters.
+     */
+    abstract double getArea();
+
+    //  Descends from the root, to be called once by the constructor of the subclass
+    final void cover() {
+        cover(0, 0, -90, 90, -180, 180);
+    }
+
+    static double cellArea(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        return EARTH_RADIUS * EARTH_RADIUS * Math.toRadians(maxLongitude - minLongitude)
+                * (Math.sin(Math.toRadians(maxLatitude)) - Math.sin(Math.toRadians(minLatitude)));
+    }
+
+    private void cover(long bits, int depth, double minLatitude, double maxLatitude,
+                       double minLongitude, double maxLongitude) {
+        if (!this.complete || !intersects(minLatitude, maxLatitude, minLongitude, maxLongitude)) {
+            return;
+        }
+        if (depth == this.numberOfBits || contains(minLatitude, maxLatitude, minLongitude, maxLongitude)) {
+            int shift = this.numberOfBits - depth;
+            addRange(bits << shift, ((bits + 1) << shift) - 1,
+                    cellArea(minLatitude, maxLatitude, minLongitude, maxLongitude));
+            return;
+        }
+        // even bits split the longitude, odd bits the latitude
+        if (depth % 2 == 0) {
+            double middle = (minLongitude + maxLongitude) / 2;
+            cover(bits << 1, depth + 1, minLatitude, maxLatitude, minLongitude, middle);
+            cover((bits << 1) | 1, depth + 1, minLatitude, maxLatitude, middle, maxLongitude);
+        } else {
+            double middle = (minLatitude + maxLatitude) / 2;
+            cover(bits << 1, depth + 1, minLatitude, middle, minLongitude, maxLongitude);
+            cover((bits << 1) | 1, depth + 1, middle, maxLatitude, minLongitude, maxLongitude);
+        }
+    }
+
+    private void addRange(long first, long last, double area) {
+        this.cellCount += last - first + 1;
+        this.coveredArea += area;
+        if (this.cellCount > this.maxCells) {
+            this.complete = false;
+        }
+        if (this.rangeCount > 0 && this.lasts[this.rangeCount - 1] + 1 == first) {
+            this.lasts[this.rangeCount - 1] = last;
+            return;
+        }
+        if (this.rangeCount == this.firsts.length) {
+            this.firsts = Arrays.copyOf(this.firsts, this.rangeCount * 2);
+            this.lasts = Arrays.copyOf(this.lasts, this.rangeCount * 2);
+        }
+        this.firsts[this.rangeCount] = first;
+        this.lasts[this.rangeCount] = last;
+        this.rangeCount++;
+    }
+
+    public int getPrecision() {
+        return this.precision;
+    }
+
+    /**
+     * @return False if the cover was given up after exceeding its maximal number of cells.
+     */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * @return The number of cells of the cover, at least maxCells + 1 if the cover is incomplete.
+     */
+    public long getCellCount() {
+        return this.cellCount;
+    }
+
+    /**
+     * @return The ranges of the cover in ascending order, none adjacent to the next one.
+     */
+    public List<CellRange> getRanges() {
+        return new AbstractList<CellRange>() {
+            @Override
+            public CellRange get(int index) {
+                if (index < 0 || index >= rangeCount) {
+                    throw new IndexOutOfBoundsException("Range " + index + " of " + rangeCount);
+                }
+                return new CellRange(firsts[index], lasts[index], precision);
+            }
+
+            @Override
+            public int size() {
+                return rangeCount;
+            }
+        };
+    }
+
+    /**
+     * @return The ranges of the cover as queries in ascending order.
+     */
+    public Set<GeoHashQuery> toQueries() {
+        Set<GeoHashQuery> queries = new LinkedHashSet<GeoHashQuery>();
+        for (int i = 0; i < this.rangeCount; i++) {
+            String start = Base32Utils.bitsToBase32(this.firsts[i], this.precision);
+            long end = this.lasts[i] + 1;
+            // past the last cell there is no geohash of this precision, '~' sorts after every geohash
+            queries.add(new GeoHashQuery(start,
+                    (end >>> this.numberOfBits) != 0 ? "~" : Base32Utils.bitsToBase32(end, this.precision)));
+        }
+        return queries;
+    }
+
+    /**
+     * @return The area of the cells of the cover in square meters.
+     */
+    public double getCoveredArea() {
+        return this.coveredArea;
+    }
+
+    /**
+     * @return The area of the cells of the cover divided by the size of the area to cover, the part of the keys
+     * fetched that lie outside the area is about 1 - 1 / ratio.
+     */
+    public double getOverFetchRatio() {
+        return this.coveredArea / getArea();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+                "precision=" + precision +
+                ", ranges=" + rangeCount +
+                ", cells=" + cellCount +
+                ", overFetchRatio=" + getOverFetchRatio() +
+                '}';
+    }
+}
@@ -0,0 +1,127 @@
+package com.olab.orangefire_lib.core;
+
+import com.olab.orangefire_lib.util.Base32Utils;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Consecutive geohash cells of one precision, from a first to a last cell inclusive, held as their bits.
+ *
+ * Walking the bits from getFirst() to getLast() visits the cells without any allocation. The iterator converts the
+ * cells to base32 strings one at a time, for the places needing strings like cell subscriptions.
+ */
+public final class CellRange implements Iterable<String> {
+    private final long first;
+    private final long last;
+    private final int precision;
+
+    /**
+     * @param first Bits of the first cell
+     * @param last Bits of the last cell, the range is empty if it is smaller than first
+     * @param precision Precision of the cells
+     */
+    public CellRange(long first, long last, int precision) {
+        if (precision < 1 || precision > GeoHash.MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision of a cell must be in the range [1, "
+                    + GeoHash.MAX_PRECISION + "]: " + precision);
+        }
+        this.first = first;
+        this.last = last;
+        this.precision = precision;
+    }
+
+    public long getFirst() {
+        return this.first;
+    }
+
+    public long getLast() {
+        return this.last;
+    }
+
+    public int getPrecision() {
+        return this.precision;
+    }
+
+    /**
+     * @return The exact number of cells in this range.
+     */
+    public long count() {
+        return this.last < this.first ? 0 : this.last - this.first + 1;
+    }
+
+    public boolean isEmpty() {
+        return this.last < this.first;
+    }
+
+    /**
+     * @param cell Bits of a cell of the precision of this range
+     * @return True if the cell is part of this range.
+     */
+    public boolean contains(long cell) {
+        return cell >= this.first && cell <= this.last;
+    }
+
+    /**
+     * @param cell Bits of a cell of the precision of this range
+     * @return The base32 geohash of the cell.
+     */
+    public String toBase32(long cell) {
+        return Base32Utils.bitsToBase32(cell, this.precision);
+    }
+
+    /**
+     * @return An iterator over the base32 geohashes of the cells, in ascending order.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private long next = first;
+
+            @Override
+            public boolean hasNext() {
+                return this.next <= last;
+            }
+
+            @Override
+            public String next() {
+                if (this.next > last) {
+                    throw new NoSuchElementException();
+                }
+                return toBase32(this.next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CellRange that = (CellRange) o;
+
+        return first == that.first && last == that.last && precision == that.precision;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (first ^ (first >>> 32));
+        result = 31 * result + (int) (last ^ (last >>> 32));
+        result = 31 * result + precision;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CellRange{" +
+                "first=" + (isEmpty() ? "-" : toBase32(first)) +
+                ", last=" + (isEmpty() ? "-" : toBase32(last)) +
+                ", count=" + count() +
+                '}';
+    }
+}
@@ -0,0 +1,138 @@
+package com.olab.orangefire_lib.core;
+
+import com.olab.orangefire_lib.GeoLocation;
+
+/**
+ * The cells of one precision intersecting a circle, as the sorted list of the fewest ranges of consecutive cells.
+ *
+ * Distances are great circle distances on the same sphere as GeoUtils.distance and CircleFilter, so every cell
+ * holding a point accepted by a CircleFilter of the same center and radius is part of the cover.
+ */
+public final class CircleCover extends CellCover {
+
+    // Margin in meters, so rounding never leaves out a cell touched by the circle or takes a crossed cell as inside
+    private static final double MARGIN = 0.01;
+
+    private final double centerLatitude;
+    private final double centerLongitude;
+    private final double cosCenterLatitude;
+    private final double antipodeLatitude;
+    private final double antipodeLongitude;
+    // haversine terms of the radius enlarged and reduced by the margin
+    private final double outerHaversine;
+    private final double innerHaversine;
+    private final double circleArea;
+
+    private CircleCover(GeoLocation center, double radius, int precision, long maxCells) {
+        super(precision, maxCells);
+        this.centerLatitude = center.latitude;
+        this.centerLongitude = center.longitude;
+        this.cosCenterLatitude = Math.cos(Math.toRadians(center.latitude));
+        this.antipodeLatitude = -center.latitude;
+        this.antipodeLongitude = center.longitude > 0 ? center.longitude - 180 : center.longitude + 180;
+        double angle = Math.min(Math.PI, Math.max(0, radius) / EARTH_RADIUS);
+        this.outerHaversine = haversineOf(Math.min(Math.PI, angle + MARGIN / EARTH_RADIUS));
+        this.innerHaversine = haversineOf(Math.max(0, angle - MARGIN / EARTH_RADIUS));
+        this.circleArea = 2 * Math.PI * EARTH_RADIUS * EARTH_RADIUS * (1 - Math.cos(angle));
+        cover();
+    }
+
+    /**
+     * Computes the cells of a precision intersecting a circle.
+     * @param center Center of the circle.
+     * @param radius Radius of the circle in meters.
+     * @param precision Precision of the cells.
+     * @return The cover of the circle.
+     */
+    public static CircleCover atLocation(GeoLocation center, double radius, int precision) {
+        return new CircleCover(center, radius, precision, Long.MAX_VALUE);
+    }
+
+    /**
+     * Computes the cells of a precision intersecting a circle, giving up as soon as more than a maximal number of
+     * cells is found. This bounds the cost of trying a precision too fine for the circle.
+     * @param center Center of the circle.
+     * @param radius Radius of the circle in meters.
+     * @param precision Precision of the cells.
+     * @param maxCells Number of cells after which the cover is given up.
+     * @return The cover of the circle, incomplete if it needs more than maxCells cells.
+     */
+    public static CircleCover atLocation(GeoLocation center, double radius, int precision, long maxCells) {
+        return new CircleCover(center, radius, precision, maxCells);
+    }
+
+    private static double haversineOf(double angle) {
+        double sinHalfAngle = Math.sin(angle / 2);
+        return sinHalfAngle * sinHalfAngle;
+    }
+
+    private static double longitudeDistance(double longitude1, double longitude2) {
+        double delta = Math.abs(longitude1 - longitude2) % 360;
+        return delta > 180 ? 360 - delta : delta;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+    private static double haversine(double latitude1, double longitude1, double cosLatitude1,
+                                    double latitude2, double longitude2) {
+        double sinHalfLatitudeDelta = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinHalfLongitudeDelta = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        return sinHalfLatitudeDelta * sinHalfLatitudeDelta
+                + cosLatitude1 * Math.cos(Math.toRadians(latitude2)) * sinHalfLongitudeDelta * sinHalfLongitudeDelta;
+    }
+
+    //  Haversine term of the distance from a point to the nearest point of a cell
+    private static double minHaversine(double latitude, double longitude, double cosLatitude,
+                                       double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        if (longitude >= minLongitude && longitude <= maxLongitude) {
+            // no point of the cell is nearer than the one on the same meridian
+            return haversineOf(Math.toRadians(Math.abs(latitude - clamp(latitude, minLatitude, maxLatitude))));
+        }
+        // otherwise the nearest point lies on a meridian edge, the parallel edges grow farther with the longitude
+        return Math.min(
+                minHaversineToMeridian(latitude, longitude, cosLatitude, minLatitude, maxLatitude, minLongitude),
+                minHaversineToMeridian(latitude, longitude, cosLatitude, minLatitude, maxLatitude, maxLongitude));
+    }
+
+    private static double minHaversineToMeridian(double latitude, double longitude, double cosLatitude,
+                                                 double minLatitude, double maxLatitude, double meridian) {
+        double longitudeDelta = longitudeDistance(longitude, meridian);
+        if (longitudeDelta < 90) {
+            // the distance along the meridian only grows away from the foot of the perpendicular
+            double footLatitude = Math.toDegrees(Math.atan(Math.tan(Math.toRadians(latitude))
+                    / Math.cos(Math.toRadians(longitudeDelta))));
+            return haversine(latitude, longitude, cosLatitude,
+                    clamp(footLatitude, minLatitude, maxLatitude), meridian);
+        }
+        // the foot lies on the opposite meridian, the distance along this one has no minimum between the ends
+        return Math.min(haversine(latitude, longitude, cosLatitude, minLatitude, meridian),
+                haversine(latitude, longitude, cosLatitude, maxLatitude, meridian));
+    }
+
+    @Override
+    boolean intersects(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        return minHaversine(this.centerLatitude, this.centerLongitude, this.cosCenterLatitude,
+                minLatitude, maxLatitude, minLongitude, maxLongitude) <= this.outerHaversine;
+    }
+
+    @Override
+    boolean contains(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        // the farthest point from the center is the nearest point to the antipode
+        return 1 - minHaversine(this.antipodeLatitude, this.antipodeLongitude, this.cosCenterLatitude,
+                minLatitude, maxLatitude, minLongitude, maxLongitude) <= this.innerHaversine;
+    }
+
+    /**
+     * @return The area of the circle in square meters.
+     */
+    public double getCircleArea() {
+        return this.circleArea;
+    }
+
+    @Override
+    double getArea() {
+        return this.circleArea;
+    }
+}
@@ -0,0 +1,260 @@
+package com.olab.orangefire_lib.core;
+
+import com.olab.orangefire_lib.util.Base32Utils;
+import com.olab.orangefire_lib.GeoLocation;
+
+//  GeoHash is kept as interleaved bits (longitude first) in the low bits of a long. The base32 string is only
+//  created when it is requested.
+public class GeoHash {
+    private final long bits;
+    private final int precision;
+    private String geoHash;
+
+    // The default precision of a geohash
+    public static final int DEFAULT_PRECISION = 6;
+
+    // The maximal precision of a geohash, limited by the bits available in a long
+    public static final int MAX_PRECISION = 12;
+
+    // The maximal number of bits precision for a geohash
+    public static final int MAX_PRECISION_BITS = MAX_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
+
+    // The number of bits per coordinate at maximal precision
+    private static final int COORDINATE_BITS = MAX_PRECISION_BITS / 2;
+
+    public GeoHash(double latitude, double longitude) {
+        this(latitude, longitude, DEFAULT_PRECISION);
+    }
+
+    public GeoHash(GeoLocation location) {
+        this(location.latitude, location.longitude, DEFAULT_PRECISION);
+    }
+
+    public GeoHash(double latitude, double longitude, int precision) {
+        this.bits = encode(latitude, longitude, precision);
+        this.precision = precision;
+    }
+
+    public GeoHash(String hash) {
+        if (hash.length() == 0 || hash.length() > MAX_PRECISION || !Base32Utils.isValidBase32String(hash)) {
+            throw new IllegalArgumentException("Not a valid geoHash: " + hash);
+        }
+        this.bits = Base32Utils.base32ToBits(hash);
+        this.precision = hash.length();
+        this.geoHash = hash;
+    }
+
+    public GeoHash(long bits, int precision) {
+        checkPrecision(precision);
+        if (bits < 0 || (bits >>> (precision * Base32Utils.BITS_PER_BASE32_CHAR)) != 0) {
+            throw new IllegalArgumentException("Not valid geoHash bits for precision " + precision + ": " + bits);
+        }
+        this.bits = bits;
+        this.precision = precision;
+    }
+
+    /**
+     * Encodes a location to geohash bits without creating any objects.
+     * @param latitude Latitude in the range of [-90, 90]
+     * @param longitude Longitude in the range of [-180, 180]
+     * @param precision Number of base32 characters of the geohash
+     * @return Interleaved geohash bits, the lowest precision*5 bits are used.
+     */
+    public static long encode(double latitude, double longitude, int precision) {
+        checkPrecision(precision);
+        if (!GeoLocation.coordinatesValid(latitude, longitude)) {
+            throw new IllegalArgumentException(String.format("Not valid location coordinates: [%f, %f]", latitude, longitude));
+        }
+        long longitudeIndex = quantize(longitude, -180, 360);
+        long latitudeIndex = quantize(latitude, -90, 180);
+        long interleaved = (spread(longitudeIndex) << 1) | spread(latitudeIndex);
+        return interleaved >>> (MAX_PRECISION_BITS - precision * Base32Utils.BITS_PER_BASE32_CHAR);
+    }
+
+    /**
+     * Returns the bits of the geohash cell next to the given one, wrapping around the antimeridian.
+     * @param bits Geohash bits
+     * @param precision Number of base32 characters of the geohash
+     * @param latitudeSteps Number of cells to move north (positive) or south (negative)
+     * @param longitudeSteps Number of cells to move east (positive) or west (negative)
+     * @return Bits of the neighbor cell or -1 if the neighbor would lie beyond a pole.
+     */
+    public static long neighbor(long bits, int precision, int latitudeSteps, int longitudeSteps) {
+        int numberOfBits = precision * Base32Utils.BITS_PER_BASE32_CHAR;
+        int longitudeBits = (numberOfBits + 1) / 2;
+        int latitudeBits = numberOfBits / 2;
+        long aligned = bits << (MAX_PRECISION_BITS - numberOfBits);
+        long longitudeIndex = compact(aligned >>> 1) >>> (COORDINATE_BITS - longitudeBits);
+        long latitudeIndex = compact(aligned) >>> (COORDINATE_BITS - latitudeBits);
+
+        latitudeIndex += latitudeSteps;
+        if (latitudeIndex < 0 || latitudeIndex >= (1L << latitudeBits)) {
+            return -1;
+        }
+        long longitudeCells = 1L << longitudeBits;
+        longitudeIndex = ((longitudeIndex + longitudeSteps) % longitudeCells + longitudeCells) % longitudeCells;
+
+        long interleaved = (spread(longitudeIndex << (COORDINATE_BITS - longitudeBits)) << 1) |
+                spread(latitudeIndex << (COORDINATE_BITS - latitudeBits));
+        return interleaved >>> (MAX_PRECISION_BITS - numberOfBits);
+    }
+
+    /**
+     * Decodes geohash bits to the area covered by the cell.
+     * @param bits Geohash bits
+     * @param precision Number of base32 characters of the geohash
+     * @return Bounding box of the geohash cell.
+     */
+    public static BoundingBox decode(long bits, int precision) {
+        return decodeBits(bits, precision * Base32Utils.BITS_PER_BASE32_CHAR);
+    }
+
+    /**
+     * Decodes a cell of any number of bits, not only whole base32 characters.
+     * @param bits Geohash bits
+     * @param numberOfBits Number of significant bits, at most MAX_PRECISION_BITS
+     * @return Bounding box of the cell.
+     */
+    public static BoundingBox decodeBits(long bits, int numberOfBits) {
+        int longitudeBits = (numberOfBits + 1) / 2;
+        int latitudeBits = numberOfBits / 2;
+        long aligned = bits << (MAX_PRECISION_BITS - numberOfBits);
+        long longitudeIndex = compact(aligned >>> 1) >>> (COORDINATE_BITS - longitudeBits);
+        long latitudeIndex = compact(aligned) >>> (COORDINATE_BITS - latitudeBits);
+        double longitudeSize = 360.0 / (1L << longitudeBits);
+        double latitudeSize = 180.0 / (1L << latitudeBits);
+        return new BoundingBox(-90 + latitudeIndex * latitudeSize, -180 + longitudeIndex * longitudeSize,
+                -90 + (latitudeIndex + 1) * latitudeSize, -180 + (longitudeIndex + 1) * longitudeSize);
+    }
+
+    public String getGeoHashString() {
+        if (this.geoHash == null) {
+            this.geoHash = Base32Utils.bitsToBase32(this.bits, this.precision);
+        }
+        return this.geoHash;
+    }
+
+    public long getBits() {
+        return this.bits;
+    }
+
+    public int getPrecision() {
+        return this.precision;
+    }
+
+    public BoundingBox getBoundingBox() {
+        return decode(this.bits, this.precision);
+    }
+
+    /**
+     * Returns the neighbor cell of the same precision.
+     * @param latitudeSteps Number of cells to move north (positive) or south (negative)
+     * @param longitudeSteps Number of cells to move east (positive) or west (negative)
+     * @return The neighbor cell or null if it would lie beyond a pole.
+     */
+    public GeoHash getNeighbor(int latitudeSteps, int longitudeSteps) {
+        long neighborBits = neighbor(this.bits, this.precision, latitudeSteps, longitudeSteps);
+        return neighborBits < 0 ? null : new GeoHash(neighborBits, this.precision);
+    }
+
+    /**
+     * @return The up to eight cells surrounding this one, cells beyond the poles are left out.
+     */
+    public GeoHash[] getNeighbors() {
+        GeoHash[] neighbors = new GeoHash[8];
+        int count = 0;
+        for (int latitudeSteps = -1; latitudeSteps <= 1; latitudeSteps++) {
+            for (int longitudeSteps = -1; longitudeSteps <= 1; longitudeSteps++) {
+                if (latitudeSteps == 0 && longitudeSteps == 0) {
+                    continue;
+                }
+                GeoHash neighbor = getNeighbor(latitudeSteps, longitudeSteps);
+                if (neighbor != null && !neighbor.equals(this)) {
+                    neighbors[count++] = neighbor;
+                }
+            }
+        }
+        if (count == neighbors.length) {
+            return neighbors;
+        }
+        GeoHash[] result = new GeoHash[count];
+        System.arraycopy(neighbors, 0, result, 0, count);
+        return result;
+    }
+
+    private static void checkPrecision(int precision) {
+        if (precision < 1) {
+            throw new IllegalArgumentException("Precision of GeoHash must be larger than zero!");
+        }
+        if (precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision of a GeoHash must be less than " + (MAX_PRECISION + 1) + "!");
+        }
+    }
+
+    //  Index of the cell containing value when [min, min+span] is split into 2^COORDINATE_BITS cells. Cell borders
+    //  belong to the lower cell, like in the bisection of the geohash algorithm. Borders are exact in double, so
+    //  the estimate is corrected with exact comparisons.
+    private static long quantize(double value, double min, double span) {
+        final long cells = 1L << COORDINATE_BITS;
+        final double cellSize = span / cells;
+        long index = (long) ((value - min) / cellSize);
+        if (index >= cells) {
+            index = cells - 1;
+        } else if (index < 0) {
+            index = 0;
+        }
+        while (index > 0 && value <= min + index * cellSize) {
+            index--;
+        }
+        while (index < cells - 1 && value > min + (index + 1) * cellSize) {
+            index++;
+        }
+        return index;
+    }
+
+    //  Spreads the low 32 bits of value to the even bit positions.
+    private static long spread(long value) {
+        value &= 0xFFFFFFFFL;
+        value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+        value = (value | (value << 8)) & 0x00FF00FF00FF00FFL;
+        value = (value | (value << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value << 2)) & 0x3333333333333333L;
+        value = (value | (value << 1)) & 0x5555555555555555L;
+        return value;
+    }
+
+    //  Gathers the even bit positions of value into the low 32 bits.
+    private static long compact(long value) {
+        value &= 0x5555555555555555L;
+        value = (value | (value >>> 1)) & 0x3333333333333333L;
+        value = (value | (value >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value >>> 4)) & 0x00FF00FF00FF00FFL;
+        value = (value | (value >>> 8)) & 0x0000FFFF0000FFFFL;
+        value = (value | (value >>> 16)) & 0x00000000FFFFFFFFL;
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        GeoHash other = (GeoHash) o;
+
+        return this.bits == other.bits && this.precision == other.precision;
+    }
+
+    @Override
+    public String toString() {
+        return "GeoHash{" +
+                "geoHash='" + getGeoHashString() + '\'' +
+                '}';
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (this.bits ^ (this.bits >>> 32));
+        result = 31 * result + this.precision;
+        return result;
+    }
+}
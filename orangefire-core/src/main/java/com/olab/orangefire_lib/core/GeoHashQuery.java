@@ -35,7 +35,7 @@ public class GeoHashQuery {
         String startHash = base + Base32Utils.valueToBase32Char(startValue);
         String endHash;
         if (endValue > 31) {
-            endHash = base + "z";
+            endHash = base + "~";
         } else {
             endHash = base + Base32Utils.valueToBase32Char(endValue);
         }
@@ -43,73 +43,17 @@ public class GeoHashQuery {
     }
 
     /**
-     * Return set of GeoHashQueries representing certain search area.
+     * Return set of GeoHashQueries representing certain search area. The queries are the exact cover of the circle
+     * by cells about 32 times smaller than the circle, or of default precision for small circles.
      * @param location Center point of search area.
      * @param radius Radius of search area.
-     * @return Set of GeoHashQueries containing whole search area.
+     * @return Set of GeoHashQueries containing whole search area, in ascending order.
      */
     public static Set<GeoHashQuery> queriesAtLocation(GeoLocation location, double radius) {
         int queryBits = Math.max(1, Utils.bitsForBoundingBox(location, radius));
         int geoHashPrecision = (int)(Math.ceil(((float)queryBits)/Base32Utils.BITS_PER_BASE32_CHAR));
-
-        double latitude = location.latitude;
-        double longitude = location.longitude;
-        double latitudeDegrees = radius/Constants.METERS_PER_DEGREE_LATITUDE;
-        double latitudeNorth = Math.min(90, latitude + latitudeDegrees);
-        double latitudeSouth = Math.max(-90, latitude - latitudeDegrees);
-        double longitudeDeltaNorth = GeoUtils.distanceToLongitudeDegrees(radius, latitudeNorth);
-        double longitudeDeltaSouth = GeoUtils.distanceToLongitudeDegrees(radius, latitudeSouth);
-        double longitudeDelta = Math.max(longitudeDeltaNorth, longitudeDeltaSouth);
-
-        Set<GeoHashQuery> queries = new HashSet<GeoHashQuery>();
-
-        GeoHash geoHash = new GeoHash(latitude, longitude, geoHashPrecision);
-        GeoHash geoHashW = new GeoHash(latitude, GeoUtils.wrapLongitude(longitude - longitudeDelta), geoHashPrecision);
-        GeoHash geoHashE = new GeoHash(latitude, GeoUtils.wrapLongitude(longitude + longitudeDelta), geoHashPrecision);
-
-        GeoHash geoHashN = new GeoHash(latitudeNorth, longitude, geoHashPrecision);
-        GeoHash geoHashNW = new GeoHash(latitudeNorth, GeoUtils.wrapLongitude(longitude - longitudeDelta), geoHashPrecision);
-        GeoHash geoHashNE = new GeoHash(latitudeNorth, GeoUtils.wrapLongitude(longitude + longitudeDelta), geoHashPrecision);
-
-        GeoHash geoHashS = new GeoHash(latitudeSouth, longitude, geoHashPrecision);
-        GeoHash geoHashSW = new GeoHash(latitudeSouth, GeoUtils.wrapLongitude(longitude - longitudeDelta), geoHashPrecision);
-        GeoHash geoHashSE = new GeoHash(latitudeSouth, GeoUtils.wrapLongitude(longitude + longitudeDelta), geoHashPrecision);
-
-        queries.add(queryForGeoHash(geoHash, queryBits));
-        queries.add(queryForGeoHash(geoHashE, queryBits));
-        queries.add(queryForGeoHash(geoHashW, queryBits));
-        queries.add(queryForGeoHash(geoHashN, queryBits));
-        queries.add(queryForGeoHash(geoHashNE, queryBits));
-        queries.add(queryForGeoHash(geoHashNW, queryBits));
-        queries.add(queryForGeoHash(geoHashS, queryBits));
-        queries.add(queryForGeoHash(geoHashSE, queryBits));
-        queries.add(queryForGeoHash(geoHashSW, queryBits));
-
-        // Join queries
-        boolean didJoin;
-        do {
-            GeoHashQuery query1 = null;
-            GeoHashQuery query2 = null;
-            for (GeoHashQuery query: queries) {
-                for (GeoHashQuery other: queries) {
-                    if (query != other && query.canJoinWith(other)) {
-                        query1 = query;
-                        query2 = other;
-                        break;
-                    }
-                }
-            }
-            if (query1 != null && query2 != null) {
-                queries.remove(query1);
-                queries.remove(query2);
-                queries.add(query1.joinWith(query2));
-                didJoin = true;
-            } else {
-                didJoin = false;
-            }
-        } while (didJoin);
-
-        return queries;
+        return CircleCover.atLocation(location, radius, Math.min(GeoHash.DEFAULT_PRECISION, geoHashPrecision + 1))
+                .toQueries();
     }
 
     private boolean isPrefix(GeoHashQuery other) {
@@ -158,6 +102,32 @@ public class GeoHashQuery {
         return this.endValue;
     }
 
+    /**
+     * @return Bits of the first geohash of maximal precision inside this query.
+     */
+    public long getStartBits() {
+        return toBits(this.startValue);
+    }
+
+    /**
+     * @return Bits of the first geohash of maximal precision after this query.
+     */
+    public long getEndBits() {
+        return toBits(this.endValue);
+    }
+
+    //  A value compares to geohashes of maximal precision like its bits padded with zeros. A trailing '~' sorts after
+    //  every geohash starting with the prefix before it.
+    private static long toBits(String value) {
+        boolean afterPrefix = value.endsWith("~");
+        String hash = afterPrefix ? value.substring(0, value.length() - 1) : value;
+        long bits = Base32Utils.base32ToBits(hash);
+        if (afterPrefix) {
+            bits++;
+        }
+        return bits << ((GeoHash.MAX_PRECISION - hash.length()) * Base32Utils.BITS_PER_BASE32_CHAR);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -186,36 +156,59 @@ public class GeoHashQuery {
                 '}';
     }
 
-    public Set<String> GetGeohashSet() throws Exception {
-        Set<String> hashSet = new HashSet<String>();
-        if( getStartValue().length() > GeoHash.DEFAULT_PRECISION ){
-            //  searching smaller area than expected => add area with decreased precision
-            String s1 = getStartValue().substring(0, GeoHash.DEFAULT_PRECISION);
-            String s2 = getEndValue().substring(0, GeoHash.DEFAULT_PRECISION);
-            hashSet.add( s1 );
-            if( !s1.equals( s2)) {
-                hashSet.add( s2 );
-            }
-
-        } else if ( getStartValue().length() < GeoHash.DEFAULT_PRECISION) {
-            // generate smaller geohashes areas to match current precision
-            hashSet = Base32Utils.GenerateHashesFromTo( getStartValue(), getEndValue() );
-        } else {
-            //  generate geohashes for size equal to precision
-            String tempHash = getStartValue( );
-            int i = 0;
-            while( !tempHash.equals(getEndValue() ) ){
-                hashSet.add( tempHash );
-                tempHash = Base32Utils.nextGeohash(tempHash, 5);
-            }
-            if( tempHash != getStartValue()){
-                hashSet.add( getEndValue());
-            }
-        }
+    /**
+     * Return set of geohashes of default precision covering this query.
+     * @return Geohashes of all cells of default precision overlapping this query.
+     */
+    public Set<String> GetGeohashSet() {
+        return getCells(GeoHash.DEFAULT_PRECISION);
+    }
 
+    /**
+     * @param precision Precision of the cells
+     * @return The cells of the given precision overlapping this query.
+     */
+    public Set<String> getCells(int precision) {
+        CellRange range = getCellRange(precision);
+        Set<String> hashSet = new HashSet<String>((int) Math.min(Integer.MAX_VALUE / 2, range.count() * 4 / 3 + 1));
+        for (String cell : range) {
+            hashSet.add(cell);
+        }
         return hashSet;
     }
 
+    /**
+     * @param precision Precision of the cells
+     * @return The cells of the given precision overlapping this query, without listing them.
+     */
+    public CellRange getCellRange(int precision) {
+        return new CellRange(getFirstCell(precision), getLastCell(precision), precision);
+    }
+
+    /**
+     * @param precision Precision of the cells
+     * @return Bits of the first cell of the given precision overlapping this query.
+     */
+    public long getFirstCell(int precision) {
+        return getStartBits() >>> cellShift(precision);
+    }
+
+    /**
+     * @param precision Precision of the cells
+     * @return Bits of the last cell of the given precision overlapping this query.
+     */
+    public long getLastCell(int precision) {
+        return (getEndBits() - 1) >>> cellShift(precision);
+    }
+
+    private static int cellShift(int precision) {
+        if (precision < 1 || precision > GeoHash.MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision of a cell must be in the range [1, "
+                    + GeoHash.MAX_PRECISION + "]: " + precision);
+        }
+        return (GeoHash.MAX_PRECISION - precision) * Base32Utils.BITS_PER_BASE32_CHAR;
+    }
+
     public static class Utils {
 
         private Utils() {}
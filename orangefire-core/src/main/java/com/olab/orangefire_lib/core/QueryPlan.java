@@ -0,0 +1,218 @@
+package com.olab.orangefire_lib.core;
+
+import com.olab.orangefire_lib.GeoLocation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+//  Result of planning a query: the geohash ranges covering the search area and the cells subscribed for each of them,
+//  all of the same precision. Plans are immutable, so they can be shared between queries. The cells are only listed
+//  when first asked for, so the cell count of a plan too large to be subscribed is known without listing them.
+public class QueryPlan {
+    private final Set<GeoHashQuery> queries;
+    private final int precision;
+    private final int cellCount;
+    // area of the cells divided by the size of the search area, NaN if the plan was not made for an area
+    private final double overFetchRatio;
+    private volatile Map<GeoHashQuery, Set<String>> cellsByQuery;
+    private volatile Set<String> cells;
+
+    public QueryPlan(Set<GeoHashQuery> queries) {
+        this(queries, GeoHash.DEFAULT_PRECISION);
+    }
+
+    public QueryPlan(Set<GeoHashQuery> queries, int precision) {
+        this(queries, precision, Double.NaN);
+    }
+
+    /**
+     * @param cover Cells of the search area to subscribe to, the ranges of the cover become the queries of the plan.
+     */
+    public QueryPlan(CellCover cover) {
+        this(cover.toQueries(), cover.getPrecision(), cover.getOverFetchRatio());
+    }
+
+    private QueryPlan(Set<GeoHashQuery> queries, int precision, double overFetchRatio) {
+        this.precision = precision;
+        this.queries = Collections.unmodifiableSet(new LinkedHashSet<GeoHashQuery>(queries));
+        this.cellCount = (int) countCells(this.queries, precision);
+        this.overFetchRatio = overFetchRatio;
+    }
+
+    private synchronized void listCells() {
+        if (this.cells != null) {
+            return;
+        }
+        Map<GeoHashQuery, Set<String>> cellsByQuery = new HashMap<GeoHashQuery, Set<String>>();
+        Set<String> cells = new HashSet<String>();
+        for (GeoHashQuery query : this.queries) {
+            Set<String> queryCells = query.getCells(this.precision);
+            cellsByQuery.put(query, Collections.unmodifiableSet(queryCells));
+            cells.addAll(queryCells);
+        }
+        this.cellsByQuery = Collections.unmodifiableMap(cellsByQuery);
+        this.cells = Collections.unmodifiableSet(cells);
+    }
+
+    /**
+     * Plans a query without any caching.
+     * @param center Center point of search area.
+     * @param radius Radius of search area in meters.
+     * @return Plan covering the whole search area.
+     */
+    public static QueryPlan atLocation(GeoLocation center, double radius) {
+        return new QueryPlan(CircleCover.atLocation(center, radius, GeoHash.DEFAULT_PRECISION));
+    }
+
+    /**
+     * Plans a query on keys stored at several precisions, without any caching. The finest precision needing at most
+     * the target number of cells is chosen, or the coarsest precision if every precision needs more. Cells of a
+     * coarser precision cover more area outside the search area, whose keys are to be filtered out by the client.
+     * @param center Center point of search area.
+     * @param radius Radius of search area in meters.
+     * @param precisions Precisions the keys are stored at.
+     * @param targetCellCount Number of cells the plan should not exceed, unless the coarsest precision needs more.
+     * @return Plan covering the whole search area.
+     */
+    public static QueryPlan atLocation(final GeoLocation center, final double radius, int[] precisions,
+                                       int targetCellCount) {
+        return plan(new CoverFactory() {
+            @Override
+            public CellCover cover(int precision, long maxCells) {
+                return CircleCover.atLocation(center, radius, precision, maxCells);
+            }
+        }, precisions, targetCellCount);
+    }
+
+    /**
+     * Plans a query of a bounding box on keys stored at several precisions, choosing the precision like
+     * atLocation.
+     * @param box Search area, it may cross the antimeridian.
+     * @param precisions Precisions the keys are stored at.
+     * @param targetCellCount Number of cells the plan should not exceed, unless the coarsest precision needs more.
+     * @return Plan covering the whole search area.
+     */
+    public static QueryPlan inBoundingBox(final BoundingBox box, int[] precisions, int targetCellCount) {
+        return plan(new CoverFactory() {
+            @Override
+            public CellCover cover(int precision, long maxCells) {
+                return BoxCover.inBoundingBox(box, precision, maxCells);
+            }
+        }, precisions, targetCellCount);
+    }
+
+    private interface CoverFactory {
+        CellCover cover(int precision, long maxCells);
+    }
+
+    private static QueryPlan plan(CoverFactory coverFactory, int[] precisions, int targetCellCount) {
+        int[] sortedPrecisions = precisions.clone();
+        Arrays.sort(sortedPrecisions);
+        CellCover cover = coverFactory.cover(sortedPrecisions[0], Long.MAX_VALUE);
+        // finer covers are given up once they exceed the target, a finer precision never needs fewer cells
+        for (int i = 1; i < sortedPrecisions.length; i++) {
+            CellCover finerCover = coverFactory.cover(sortedPrecisions[i], targetCellCount);
+            if (!finerCover.isComplete()) {
+                break;
+            }
+            cover = finerCover;
+        }
+        return new QueryPlan(cover);
+    }
+
+    /**
+     * Counts the distinct cells of a precision overlapping a set of queries, without listing them.
+     * @param queries Queries to cover.
+     * @param precision Precision of the cells.
+     * @return The number of cells.
+     */
+    public static long countCells(Set<GeoHashQuery> queries, int precision) {
+        long[][] ranges = new long[queries.size()][];
+        int i = 0;
+        for (GeoHashQuery query : queries) {
+            ranges[i++] = new long[]{query.getFirstCell(precision), query.getLastCell(precision)};
+        }
+        Arrays.sort(ranges, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] range1, long[] range2) {
+                return range1[0] < range2[0] ? -1 : (range1[0] == range2[0] ? 0 : 1);
+            }
+        });
+        // ranges sharing cells at this precision are counted once
+        long count = 0;
+        long countedUpTo = -1;
+        for (long[] range : ranges) {
+            long first = Math.max(range[0], countedUpTo + 1);
+            if (range[1] >= first) {
+                count += range[1] - first + 1;
+                countedUpTo = range[1];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Area of the cells of this plan divided by the size of the area it was planned for, or NaN if it was
+     * not planned for an area.
+     */
+    public double getOverFetchRatio() {
+        return this.overFetchRatio;
+    }
+
+    /**
+     * @return Precision of the cells of this plan.
+     */
+    public int getPrecision() {
+        return this.precision;
+    }
+
+    public Set<GeoHashQuery> getQueries() {
+        return this.queries;
+    }
+
+    /**
+     * @param query One of the queries of this plan.
+     * @return Cells covering the query, or an empty set if the query is not part of this plan.
+     */
+    public Set<String> getCells(GeoHashQuery query) {
+        if (this.cells == null) {
+            listCells();
+        }
+        Set<String> queryCells = this.cellsByQuery.get(query);
+        return queryCells == null ? Collections.<String>emptySet() : queryCells;
+    }
+
+    /**
+     * @return Cells covering the whole plan.
+     */
+    public Set<String> getCells() {
+        if (this.cells == null) {
+            listCells();
+        }
+        return this.cells;
+    }
+
+    /**
+     * @return Number of cells covering the whole plan, which is the number of subscriptions the plan needs. The
+     * cells are not listed to count them.
+     */
+    public int getCellCount() {
+        return this.cellCount;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryPlan{" +
+                "queries=" + queries +
+                ", precision=" + precision +
+                ", cells=" + cellCount +
+                ", overFetchRatio=" + overFetchRatio +
+                '}';
+    }
+}
@@ -0,0 +1,173 @@
+package com.olab.orangefire_lib.core;
+
+import com.olab.orangefire_lib.GeoLocation;
+import com.olab.orangefire_lib.util.GeoUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of query plans.
+ *
+ * The center is quantised to a cell a few bits finer than the bits of the query, the radius is rounded up to a
+ * bucket on a logarithmic scale. The cached plan is computed for the center of the cell with the bucket radius
+ * enlarged by the distance to the corners of the cell, so it covers the search area of every center in the cell.
+ * Small moves of a query therefore reuse the same plan, at the price of a slightly larger covered area.
+ */
+public class QueryPlanCache {
+
+    // Number of radius buckets per doubling of the radius, each bucket is about 9% larger than the previous one
+    private static final int RADIUS_BUCKETS_PER_OCTAVE = 8;
+
+    // Additional bits of the cell a center is quantised to, compared to the bits of the query
+    private static final int CENTER_EXTRA_BITS = 6;
+
+    // Smallest radius in meters that gets its own bucket
+    private static final double MIN_RADIUS = 1;
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private static final int[] DEFAULT_PRECISIONS = {GeoHash.DEFAULT_PRECISION};
+
+    private static final class Key {
+        final long cellBits;
+        final int numberOfBits;
+        final int radiusBucket;
+        // bit p is set for every storage precision p
+        final int precisionMask;
+        final int targetCellCount;
+
+        Key(long cellBits, int numberOfBits, int radiusBucket, int precisionMask, int targetCellCount) {
+            this.cellBits = cellBits;
+            this.numberOfBits = numberOfBits;
+            this.radiusBucket = radiusBucket;
+            this.precisionMask = precisionMask;
+            this.targetCellCount = targetCellCount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            return cellBits == key.cellBits && numberOfBits == key.numberOfBits && radiusBucket == key.radiusBucket
+                    && precisionMask == key.precisionMask && targetCellCount == key.targetCellCount;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (cellBits ^ (cellBits >>> 32));
+            result = 31 * result + numberOfBits;
+            result = 31 * result + radiusBucket;
+            result = 31 * result + precisionMask;
+            result = 31 * result + targetCellCount;
+            return result;
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<Key, QueryPlan> plans;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public QueryPlanCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries Maximal number of plans kept, the least recently used plan is evicted first.
+     */
+    public QueryPlanCache(final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Plan cache must hold at least one entry: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.plans = new LinkedHashMap<Key, QueryPlan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, QueryPlan> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns a plan covering the search area, computing it only if no plan for the same quantised center and
+     * radius bucket is cached.
+     * @param center Center point of search area.
+     * @param radius Radius of search area in meters.
+     * @return Plan covering at least the whole search area.
+     */
+    public QueryPlan planAtLocation(GeoLocation center, double radius) {
+        return planAtLocation(center, radius, DEFAULT_PRECISIONS, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a plan covering the search area on keys stored at several precisions, see QueryPlan.atLocation,
+     * computing it only if no plan for the same quantised center, radius bucket, precisions and target is cached.
+     * @param center Center point of search area.
+     * @param radius Radius of search area in meters.
+     * @param precisions Precisions the keys are stored at.
+     * @param targetCellCount Number of cells the plan should not exceed.
+     * @return Plan covering at least the whole search area.
+     */
+    public QueryPlan planAtLocation(GeoLocation center, double radius, int[] precisions, int targetCellCount) {
+        int precisionMask = 0;
+        for (int precision : precisions) {
+            precisionMask |= 1 << precision;
+        }
+        int radiusBucket = (int) Math.ceil(Math.log(Math.max(MIN_RADIUS, radius)) / Math.log(2) * RADIUS_BUCKETS_PER_OCTAVE);
+        double bucketRadius = Math.pow(2, (double) radiusBucket / RADIUS_BUCKETS_PER_OCTAVE);
+        int queryBits = Math.max(1, GeoHashQuery.Utils.bitsForBoundingBox(center, bucketRadius));
+        int numberOfBits = Math.min(GeoHash.MAX_PRECISION_BITS, queryBits + CENTER_EXTRA_BITS);
+        long cellBits = GeoHash.encode(center.latitude, center.longitude, GeoHash.MAX_PRECISION)
+                >>> (GeoHash.MAX_PRECISION_BITS - numberOfBits);
+        Key key = new Key(cellBits, numberOfBits, radiusBucket, precisionMask, targetCellCount);
+
+        synchronized (this) {
+            QueryPlan plan = this.plans.get(key);
+            if (plan != null) {
+                this.hits.incrementAndGet();
+                return plan;
+            }
+        }
+        this.misses.incrementAndGet();
+
+        BoundingBox cell = GeoHash.decodeBits(cellBits, numberOfBits);
+        GeoLocation cellCenter = new GeoLocation((cell.minLatitude + cell.maxLatitude) / 2,
+                (cell.minLongitude + cell.maxLongitude) / 2);
+        double cornerDistance = Math.max(
+                Math.max(GeoUtils.distance(cellCenter.latitude, cellCenter.longitude, cell.minLatitude, cell.minLongitude),
+                        GeoUtils.distance(cellCenter.latitude, cellCenter.longitude, cell.minLatitude, cell.maxLongitude)),
+                Math.max(GeoUtils.distance(cellCenter.latitude, cellCenter.longitude, cell.maxLatitude, cell.minLongitude),
+                        GeoUtils.distance(cellCenter.latitude, cellCenter.longitude, cell.maxLatitude, cell.maxLongitude)));
+        QueryPlan plan = QueryPlan.atLocation(cellCenter, bucketRadius + cornerDistance, precisions, targetCellCount);
+
+        synchronized (this) {
+            this.plans.put(key, plan);
+        }
+        return plan;
+    }
+
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    public synchronized int size() {
+        return this.plans.size();
+    }
+
+    public synchronized void clear() {
+        this.plans.clear();
+    }
+}
@@ -0,0 +1,329 @@
+package com.olab.orangefire_lib.index;
+
+import com.olab.orangefire_lib.GeoLocation;
+import com.olab.orangefire_lib.core.GeoHash;
+import com.olab.orangefire_lib.core.GeoHashQuery;
+import com.olab.orangefire_lib.util.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An embeddable in-memory spatial index answering radius queries locally.
+ *
+ * Keys are kept sorted by their geohash of maximal precision in blocks of primitive arrays, so a radius query is a
+ * range scan over every range returned by GeoHashQuery.queriesAtLocation, followed by an exact distance filter.
+ * Coordinates are stored in primitive columns indexed by a slot per key.
+ *
+ * Memory footprint per key is about 100 bytes plus the key string itself: 12 bytes in the sorted blocks (about 16
+ * with partly filled blocks), 28 bytes of columns (latitude, longitude, geohash, key reference) and about 56 bytes
+ * for the key to slot map entry.
+ *
+ * The index is thread safe. Any number of queries run in parallel, writes are exclusive and queries wait for a
+ * running write to finish.
+ */
+public class GeoIndex {
+
+    /**
+     * Receives the keys found by a query.
+     */
+    public interface Visitor {
+
+        /**
+         * Called for every key inside the query area. The index must not be modified from this method.
+         *
+         * @param key The key inside the query area
+         * @param latitude Latitude of the key
+         * @param longitude Longitude of the key
+         * @param distance Distance to the center of the query in meters
+         */
+        void visit(String key, double latitude, double longitude, double distance);
+    }
+
+    // Maximal number of entries in a block, full blocks are split in halves
+    private static final int BLOCK_CAPACITY = 1024;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    //  Sorted run of (geohash, slot) pairs
+    private static final class Block {
+        final long[] hashes = new long[BLOCK_CAPACITY];
+        final int[] slots = new int[BLOCK_CAPACITY];
+        int size;
+
+        long lastHash() {
+            return hashes[size - 1];
+        }
+
+        int lastSlot() {
+            return slots[size - 1];
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> slotsByKey = new HashMap<String, Integer>();
+    private final List<Block> blocks = new ArrayList<Block>();
+
+    // Columns indexed by slot
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private long[] hashes = new long[INITIAL_CAPACITY];
+
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeSlotCount;
+    private int usedSlotCount;
+
+    public GeoIndex() {
+        this.blocks.add(new Block());
+    }
+
+    /**
+     * Inserts a key or moves it to a new location.
+     *
+     * @param key The key to store
+     * @param location The location of the key
+     */
+    public void put(String key, GeoLocation location) {
+        put(key, location.latitude, location.longitude);
+    }
+
+    /**
+     * Inserts a key or moves it to a new location.
+     *
+     * @param key The key to store
+     * @param latitude Latitude in the range of [-90, 90]
+     * @param longitude Longitude in the range of [-180, 180]
+     */
+    public void put(String key, double latitude, double longitude) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        long hash = GeoHash.encode(latitude, longitude, GeoHash.MAX_PRECISION);
+        lock.writeLock().lock();
+        try {
+            Integer existing = slotsByKey.get(key);
+            int slot;
+            if (existing == null) {
+                slot = allocateSlot();
+                slotsByKey.put(key, slot);
+                keys[slot] = key;
+                insertEntry(hash, slot);
+            } else {
+                slot = existing;
+                if (hashes[slot] != hash) {
+                    removeEntry(hashes[slot], slot);
+                    insertEntry(hash, slot);
+                }
+            }
+            latitudes[slot] = latitude;
+            longitudes[slot] = longitude;
+            hashes[slot] = hash;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a key from the index.
+     *
+     * @param key The key to remove
+     * @return True if the key was stored in the index
+     */
+    public boolean remove(String key) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotsByKey.remove(key);
+            if (slot == null) {
+                return false;
+            }
+            removeEntry(hashes[slot], slot);
+            keys[slot] = null;
+            releaseSlot(slot);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param key The key to look up
+     * @return The location of the key or null if it is not stored in the index.
+     */
+    public GeoLocation get(String key) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slotsByKey.get(key);
+            return slot == null ? null : new GeoLocation(latitudes[slot], longitudes[slot]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of keys stored in the index.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotsByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds all keys within a radius.
+     *
+     * @param center Center of the query
+     * @param radius Radius of the query in meters
+     * @return The keys inside the query area, in no particular order.
+     */
+    public List<String> queryRadius(GeoLocation center, double radius) {
+        final List<String> result = new ArrayList<String>();
+        queryRadius(center, radius, new Visitor() {
+            @Override
+            public void visit(String key, double latitude, double longitude, double distance) {
+                result.add(key);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Visits all keys within a radius.
+     *
+     * @param center Center of the query
+     * @param radius Radius of the query in meters
+     * @param visitor Called for every key inside the query area
+     */
+    public void queryRadius(GeoLocation center, double radius, Visitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (GeoHashQuery query : GeoHashQuery.queriesAtLocation(center, radius)) {
+                scan(query.getStartBits(), query.getEndBits(), center, radius, visitor);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void scan(long startHash, long endHash, GeoLocation center, double radius, Visitor visitor) {
+        int blockIndex = findBlock(startHash, Integer.MIN_VALUE);
+        int i = lowerBound(blocks.get(blockIndex), startHash, Integer.MIN_VALUE);
+        for (; blockIndex < blocks.size(); blockIndex++, i = 0) {
+            Block block = blocks.get(blockIndex);
+            for (; i < block.size; i++) {
+                if (block.hashes[i] >= endHash) {
+                    return;
+                }
+                int slot = block.slots[i];
+                double distance = GeoUtils.distance(center.latitude, center.longitude, latitudes[slot], longitudes[slot]);
+                if (distance <= radius) {
+                    visitor.visit(keys[slot], latitudes[slot], longitudes[slot], distance);
+                }
+            }
+        }
+    }
+
+    private static int compare(long hash1, int slot1, long hash2, int slot2) {
+        if (hash1 != hash2) {
+            return hash1 < hash2 ? -1 : 1;
+        }
+        return slot1 < slot2 ? -1 : (slot1 == slot2 ? 0 : 1);
+    }
+
+    //  Index of the first block whose last entry is not smaller than (hash, slot), or the last block.
+    private int findBlock(long hash, int slot) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Block block = blocks.get(mid);
+            if (block.size > 0 && compare(block.lastHash(), block.lastSlot(), hash, slot) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    //  Index of the first entry of the block not smaller than (hash, slot).
+    private static int lowerBound(Block block, long hash, int slot) {
+        int low = 0;
+        int high = block.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(block.hashes[mid], block.slots[mid], hash, slot) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void insertEntry(long hash, int slot) {
+        int blockIndex = findBlock(hash, slot);
+        Block block = blocks.get(blockIndex);
+        if (block.size == BLOCK_CAPACITY) {
+            Block upper = new Block();
+            int half = BLOCK_CAPACITY / 2;
+            System.arraycopy(block.hashes, half, upper.hashes, 0, BLOCK_CAPACITY - half);
+            System.arraycopy(block.slots, half, upper.slots, 0, BLOCK_CAPACITY - half);
+            upper.size = BLOCK_CAPACITY - half;
+            block.size = half;
+            blocks.add(blockIndex + 1, upper);
+            if (compare(block.lastHash(), block.lastSlot(), hash, slot) < 0) {
+                block = upper;
+            }
+        }
+        int i = lowerBound(block, hash, slot);
+        System.arraycopy(block.hashes, i, block.hashes, i + 1, block.size - i);
+        System.arraycopy(block.slots, i, block.slots, i + 1, block.size - i);
+        block.hashes[i] = hash;
+        block.slots[i] = slot;
+        block.size++;
+    }
+
+    private void removeEntry(long hash, int slot) {
+        int blockIndex = findBlock(hash, slot);
+        Block block = blocks.get(blockIndex);
+        int i = lowerBound(block, hash, slot);
+        if (i == block.size || block.hashes[i] != hash || block.slots[i] != slot) {
+            throw new IllegalStateException("Index entry not found for slot " + slot);
+        }
+        System.arraycopy(block.hashes, i + 1, block.hashes, i, block.size - i - 1);
+        System.arraycopy(block.slots, i + 1, block.slots, i, block.size - i - 1);
+        block.size--;
+        if (block.size == 0 && blocks.size() > 1) {
+            blocks.remove(blockIndex);
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (usedSlotCount == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        return usedSlotCount++;
+    }
+
+    private void releaseSlot(int slot) {
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+}
@@ -0,0 +1,143 @@
+package com.olab.orangefire_lib.util;
+
+import com.olab.orangefire_lib.core.CellRange;
+import com.olab.orangefire_lib.core.GeoHash;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class Base32Utils {
+
+    /* number of bits per base 32 character */
+    public static final int BITS_PER_BASE32_CHAR = 5;
+
+    private static final String BASE32_CHARS = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private static final int[] BASE32_VALUES = new int[128];
+
+    static {
+        java.util.Arrays.fill(BASE32_VALUES, -1);
+        for (int i = 0; i < BASE32_CHARS.length(); i++) {
+            BASE32_VALUES[BASE32_CHARS.charAt(i)] = i;
+        }
+    }
+
+    private Base32Utils() {}
+
+    public static char valueToBase32Char(int value) {
+        if (value < 0 || value >= BASE32_CHARS.length()) {
+            throw new IllegalArgumentException("Not a valid base32 value: " + value);
+        }
+        return BASE32_CHARS.charAt(value);
+    }
+
+    public static int base32CharToValue(char base32Char) {
+        int value = base32Char < BASE32_VALUES.length ? BASE32_VALUES[base32Char] : -1;
+        if (value == -1) {
+            throw new IllegalArgumentException("Not a valid base32 char: " + base32Char);
+        } else {
+            return value;
+        }
+    }
+
+    public static boolean isValidBase32String(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c >= BASE32_VALUES.length || BASE32_VALUES[c] == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts geohash bits to their base32 string.
+     * @param bits Geohash bits, the lowest precision*5 bits are used.
+     * @param precision Number of characters of the result.
+     * @return Base32 geohash string.
+     */
+    public static String bitsToBase32(long bits, int precision) {
+        char[] buffer = new char[precision];
+        for (int i = precision - 1; i >= 0; i--) {
+            buffer[i] = BASE32_CHARS.charAt((int) (bits & 0x1f));
+            bits >>>= BITS_PER_BASE32_CHAR;
+        }
+        return new String(buffer);
+    }
+
+    /**
+     * Converts a base32 geohash string to its bits.
+     * @param hash Base32 geohash string, at most 12 characters long.
+     * @return Geohash bits, the lowest hash.length()*5 bits are used.
+     */
+    public static long base32ToBits(String hash) {
+        long bits = 0;
+        for (int i = 0; i < hash.length(); i++) {
+            bits = (bits << BITS_PER_BASE32_CHAR) | base32CharToValue(hash.charAt(i));
+        }
+        return bits;
+    }
+
+    public static String nextGeohash ( String startString, int flipPosition){
+        StringBuilder tempString = new StringBuilder(startString);
+        if(nextCharacter(tempString, flipPosition ) ){
+            if( flipPosition-1 > -1){
+                tempString = nextGeohash( tempString, flipPosition-1);
+            }
+        }
+        return tempString.toString();
+    }
+
+    public static StringBuilder nextGeohash ( StringBuilder stringBuilder, int flipPosition){
+        if(nextCharacter(stringBuilder, flipPosition ) ){
+            if( flipPosition-1 > -1){
+                stringBuilder = nextGeohash( stringBuilder, flipPosition-1);
+            }
+        }
+        return stringBuilder;
+    }
+
+    /**
+     * Lists the cells of default precision from the start geohash through the end geohash, both included. Geohashes
+     * shorter than the default precision stand for all the cells they contain, a trailing '~' for the last one.
+     * @param startString First geohash of the range.
+     * @param endString Last geohash of the range.
+     * @return Geohashes of the cells of default precision in the range.
+     */
+    public static Set<String> GenerateHashesFromTo(String startString, String endString){
+        CellRange range = new CellRange(toDefaultCell(startString, false), toDefaultCell(endString, true),
+                GeoHash.DEFAULT_PRECISION);
+        Set<String> hashes = new HashSet<String>((int) Math.min(Integer.MAX_VALUE / 2, range.count() * 4 / 3 + 1));
+        for (String hash : range) {
+            hashes.add(hash);
+        }
+        return hashes;
+    }
+
+    //  First or last cell of default precision of a geohash
+    private static long toDefaultCell(String hash, boolean last) {
+        boolean afterPrefix = hash.endsWith("~");
+        if (afterPrefix) {
+            hash = hash.substring(0, hash.length() - 1);
+            last = true;
+        }
+        if (hash.length() >= GeoHash.DEFAULT_PRECISION) {
+            return base32ToBits(hash.substring(0, GeoHash.DEFAULT_PRECISION));
+        }
+        int shift = (GeoHash.DEFAULT_PRECISION - hash.length()) * BITS_PER_BASE32_CHAR;
+        long bits = base32ToBits(hash) << shift;
+        return last ? bits | ((1L << shift) - 1) : bits;
+    }
+
+    static Boolean nextCharacter( StringBuilder s, int pos){
+        int i = base32CharToValue(s.charAt(pos));
+        i++;
+        if( i >= BASE32_CHARS.length()){
+            i=0;
+            s.setCharAt( pos, BASE32_CHARS.charAt(i) );
+            return true;
+        }
+        s.setCharAt( pos, BASE32_CHARS.charAt(i) );
+        return false;
+    }
+}
@@ -0,0 +1,135 @@
+package com.olab.orangefire_lib.util;
+
+import java.util.Arrays;
+
+/**
+ * Tests whether points are within a radius of a center, with the same result as comparing GeoUtils.distance to the
+ * radius up to rounding.
+ *
+ * Everything depending on the center and the radius only is computed once: a bounding box rejecting far away points
+ * without any trigonometry, the cosine of the center latitude and the haversine term of the radius. A point inside
+ * the box then costs one cosine and two sines, instead of the four trigonometric calls, the square roots and the
+ * arc tangent of GeoUtils.distance.
+ *
+ * Batches of points are tested in two passes over the coordinate columns, the bounding box test without branches
+ * collecting the indices of the points inside the box, then the haversine over those points only. The indices are
+ * kept in a buffer of the filter, so a filter must not test batches from several threads at once.
+ */
+public class CircleFilter {
+
+    // Earth's mean radius in meters, as in GeoUtils.distance
+    private static final double EARTH_RADIUS = (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS) / 2;
+
+    // Margin of the bounding box in degrees, so rounding never rejects a point the exact test accepts
+    private static final double BOX_MARGIN = 1e-9;
+
+    private final double centerLatitude;
+    private final double centerLongitude;
+    private final double cosCenterLatitude;
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double maxLongitudeDelta;
+    // haversine term of the radius, sin^2(radius / 2R)
+    private final double maxHaversine;
+    private final boolean everywhere;
+    // indices of the points of a batch inside the bounding box
+    private int[] candidates = new int[0];
+
+    /**
+     * @param centerLatitude  Latitude of the center
+     * @param centerLongitude Longitude of the center
+     * @param radius          Radius in meters
+     */
+    public CircleFilter(double centerLatitude, double centerLongitude, double radius) {
+        this.centerLatitude = centerLatitude;
+        this.centerLongitude = centerLongitude;
+        this.cosCenterLatitude = Math.cos(Math.toRadians(centerLatitude));
+        double angle = radius / EARTH_RADIUS;
+        this.everywhere = angle >= Math.PI;
+        double sinHalfAngle = Math.sin(angle / 2);
+        this.maxHaversine = sinHalfAngle * sinHalfAngle;
+
+        double latitudeDelta = Math.toDegrees(angle) + BOX_MARGIN;
+        this.minLatitude = centerLatitude - latitudeDelta;
+        this.maxLatitude = centerLatitude + latitudeDelta;
+        // the circle reaches its widest longitude at asin(sin(angle) / cos(latitude)), unless it contains a pole
+        double sinWidth = Math.sin(Math.min(angle, Math.PI / 2)) / this.cosCenterLatitude;
+        if (this.maxLatitude >= 90 || this.minLatitude <= -90 || angle >= Math.PI / 2 || sinWidth >= 1) {
+            this.maxLongitudeDelta = 180;
+        } else {
+            this.maxLongitudeDelta = Math.toDegrees(Math.asin(sinWidth)) + BOX_MARGIN;
+        }
+    }
+
+    /**
+     * @return True if the point is within the radius of the center.
+     */
+    public boolean contains(double latitude, double longitude) {
+        if (this.everywhere) {
+            return true;
+        }
+        if (latitude < this.minLatitude || latitude > this.maxLatitude) {
+            return false;
+        }
+        double longitudeDelta = Math.abs(longitude - this.centerLongitude);
+        if (longitudeDelta > 180) {
+            longitudeDelta = 360 - longitudeDelta;
+        }
+        if (longitudeDelta > this.maxLongitudeDelta) {
+            return false;
+        }
+        return haversine(latitude, longitude) <= this.maxHaversine;
+    }
+
+    /**
+     * Tests a batch of points given as coordinate columns.
+     *
+     * @param latitudes  Latitudes of the points
+     * @param longitudes Longitudes of the points
+     * @param count      Number of points to test, starting at index 0
+     * @param result     Receives for every point whether it is within the radius
+     * @return The number of points within the radius.
+     */
+    public int containsAll(double[] latitudes, double[] longitudes, int count, boolean[] result) {
+        if (this.everywhere) {
+            Arrays.fill(result, 0, count, true);
+            return count;
+        }
+        if (this.candidates.length < count) {
+            this.candidates = new int[Math.max(count, 2 * this.candidates.length)];
+        }
+        int[] candidates = this.candidates;
+        double minLatitude = this.minLatitude;
+        double maxLatitude = this.maxLatitude;
+        double maxLongitudeDelta = this.maxLongitudeDelta;
+        double centerLongitude = this.centerLongitude;
+        // every index is written, and kept only if the point is inside the box
+        int candidateCount = 0;
+        for (int i = 0; i < count; i++) {
+            double latitude = latitudes[i];
+            double longitudeDelta = Math.abs(longitudes[i] - centerLongitude);
+            longitudeDelta = Math.min(longitudeDelta, 360 - longitudeDelta);
+            boolean inBox = (latitude >= minLatitude) & (latitude <= maxLatitude)
+                    & (longitudeDelta <= maxLongitudeDelta);
+            result[i] = false;
+            candidates[candidateCount] = i;
+            candidateCount += inBox ? 1 : 0;
+        }
+        int inside = 0;
+        for (int j = 0; j < candidateCount; j++) {
+            int i = candidates[j];
+            boolean contains = haversine(latitudes[i], longitudes[i]) <= this.maxHaversine;
+            result[i] = contains;
+            inside += contains ? 1 : 0;
+        }
+        return inside;
+    }
+
+    private double haversine(double latitude, double longitude) {
+        double sinHalfLatitudeDelta = Math.sin(Math.toRadians(latitude - this.centerLatitude) / 2);
+        double sinHalfLongitudeDelta = Math.sin(Math.toRadians(longitude - this.centerLongitude) / 2);
+        return sinHalfLatitudeDelta * sinHalfLatitudeDelta
+                + this.cosCenterLatitude * Math.cos(Math.toRadians(latitude))
+                * sinHalfLongitudeDelta * sinHalfLongitudeDelta;
+    }
+}
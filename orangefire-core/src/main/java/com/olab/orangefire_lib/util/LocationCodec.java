@@ -0,0 +1,66 @@
+package com.olab.orangefire_lib.util;
+
+import com.olab.orangefire_lib.GeoLocation;
+
+/**
+ * Compact encoding of a location as a single string of 13 base32 characters.
+ *
+ * The coordinates are rounded to fixed-point integers of 1e-7 degree, about 1 cm, and offset to be non negative:
+ * the latitude takes 31 bits and the longitude 32 bits of a 63 bit value, written with the geohash alphabet. A
+ * string rather than a number is stored since JSON numbers lose precision beyond 53 bits.
+ */
+public final class LocationCodec {
+
+    /* number of characters of an encoded location */
+    public static final int ENCODED_LENGTH = 13;
+
+    private static final double SCALE = 1e7;
+    private static final long LATITUDE_OFFSET = 900000000L;
+    private static final long LONGITUDE_OFFSET = 1800000000L;
+    private static final int LONGITUDE_BITS = 32;
+    private static final long LONGITUDE_MASK = (1L << LONGITUDE_BITS) - 1;
+
+    private LocationCodec() {}
+
+    /**
+     * @param latitude Valid latitude
+     * @param longitude Valid longitude
+     * @return The encoded location.
+     */
+    public static String encode(double latitude, double longitude) {
+        if (!GeoLocation.coordinatesValid(latitude, longitude)) {
+            throw new IllegalArgumentException("Not a valid geo location: " + latitude + ", " + longitude);
+        }
+        long fixedLatitude = Math.round(latitude * SCALE) + LATITUDE_OFFSET;
+        long fixedLongitude = Math.round(longitude * SCALE) + LONGITUDE_OFFSET;
+        return Base32Utils.bitsToBase32((fixedLatitude << LONGITUDE_BITS) | fixedLongitude, ENCODED_LENGTH);
+    }
+
+    public static String encode(GeoLocation location) {
+        return encode(location.latitude, location.longitude);
+    }
+
+    /**
+     * @param encoded A string written by encode
+     * @return The location or null if the string is not a valid encoded location.
+     */
+    public static GeoLocation decode(String encoded) {
+        if (encoded.length() != ENCODED_LENGTH || !Base32Utils.isValidBase32String(encoded)) {
+            return null;
+        }
+        // 13 characters hold 65 bits, the 2 highest are never set
+        if ((Base32Utils.base32CharToValue(encoded.charAt(0)) >>> 3) != 0) {
+            return null;
+        }
+        long bits = 0;
+        for (int i = 0; i < ENCODED_LENGTH; i++) {
+            bits = (bits << Base32Utils.BITS_PER_BASE32_CHAR) | Base32Utils.base32CharToValue(encoded.charAt(i));
+        }
+        double latitude = ((bits >>> LONGITUDE_BITS) - LATITUDE_OFFSET) / SCALE;
+        double longitude = ((bits & LONGITUDE_MASK) - LONGITUDE_OFFSET) / SCALE;
+        if (!GeoLocation.coordinatesValid(latitude, longitude)) {
+            return null;
+        }
+        return new GeoLocation(latitude, longitude);
+    }
+}
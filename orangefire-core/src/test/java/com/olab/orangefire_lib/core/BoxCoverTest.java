@@ -0,0 +1,83 @@
+package com.olab.orangefire_lib.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BoxCoverTest {
+
+    private static final int POINTS_PER_BOX = 2000;
+
+    private static final BoundingBox[] BOXES = {
+            new BoundingBox(48.80, 2.25, 48.90, 2.42),
+            new BoundingBox(-10, 179.5, -9.5, -179.5),
+            new BoundingBox(60, 170, 61, -170),
+            new BoundingBox(89.5, -180, 90, 180),
+            new BoundingBox(-90, -30, -89.8, 60),
+            new BoundingBox(-0.01, -0.01, 0.01, 0.01),
+    };
+
+    @Test
+    public void pointsInsideTheBoxAreCovered() throws Exception {
+        Random random = new Random(42);
+        for (BoundingBox box : BOXES) {
+            for (int precision = 3; precision <= 7; precision++) {
+                BoxCover cover = BoxCover.inBoundingBox(box, precision, 1 << 16);
+                if (!cover.isComplete()) {
+                    continue;
+                }
+                for (int i = 0; i < POINTS_PER_BOX; i++) {
+                    double[] point = randomPointInBox(random, box);
+                    assertTrue(box + " p=" + precision + " misses " + point[0] + ", " + point[1],
+                            CircleCoverTest.covers(cover.getRanges(), GeoHash.encode(point[0], point[1], precision)));
+                }
+                // the corners belong to the box
+                for (double latitude : new double[]{box.minLatitude, box.maxLatitude}) {
+                    for (double longitude : new double[]{box.minLongitude, box.maxLongitude}) {
+                        assertTrue(box + " p=" + precision + " misses corner " + latitude + ", " + longitude,
+                                CircleCoverTest.covers(cover.getRanges(),
+                                        GeoHash.encode(latitude, longitude, precision)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void queriesHoldTheCellsOfTheCover() throws Exception {
+        for (BoundingBox box : BOXES) {
+            for (int precision = 3; precision <= 7; precision++) {
+                BoxCover cover = BoxCover.inBoundingBox(box, precision, 1 << 16);
+                if (!cover.isComplete()) {
+                    continue;
+                }
+                long cellCount = 0;
+                for (GeoHashQuery query : cover.toQueries()) {
+                    cellCount += query.getCellRange(precision).count();
+                }
+                assertEquals(box + " p=" + precision, cover.getCellCount(), cellCount);
+            }
+        }
+    }
+
+    @Test
+    public void boxAcrossTheAntimeridianLeavesOutTheOtherSide() throws Exception {
+        BoxCover cover = BoxCover.inBoundingBox(new BoundingBox(-10, 179.5, -9.5, -179.5), 5);
+        assertFalse(CircleCoverTest.covers(cover.getRanges(), GeoHash.encode(-9.75, 0, 5)));
+        assertFalse(CircleCoverTest.covers(cover.getRanges(), GeoHash.encode(-9.75, 178, 5)));
+        assertFalse(CircleCoverTest.covers(cover.getRanges(), GeoHash.encode(-9.75, -178, 5)));
+    }
+
+    private static double[] randomPointInBox(Random random, BoundingBox box) {
+        double latitude = box.minLatitude + random.nextDouble() * (box.maxLatitude - box.minLatitude);
+        double width = box.crossesAntimeridian()
+                ? box.maxLongitude - box.minLongitude + 360 : box.maxLongitude - box.minLongitude;
+        double longitude = box.minLongitude + random.nextDouble() * width;
+        if (longitude > 180) {
+            longitude -= 360;
+        }
+        return new double[]{latitude, longitude};
+    }
+}
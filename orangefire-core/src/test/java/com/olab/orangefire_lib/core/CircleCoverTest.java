@@ -0,0 +1,158 @@
+package com.olab.orangefire_lib.core;
+
+import com.olab.orangefire_lib.GeoLocation;
+import com.olab.orangefire_lib.util.GeoUtils;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CircleCoverTest {
+
+    private static final int POINTS_PER_CIRCLE = 2000;
+
+    private static final GeoLocation[] CENTERS = {
+            new GeoLocation(48.8566, 2.3522),
+            new GeoLocation(0, 179.999),
+            new GeoLocation(-33.9, -179.95),
+            new GeoLocation(89.99, 45),
+            new GeoLocation(-89.9, -120),
+            new GeoLocation(90, 0),
+            new GeoLocation(-90, 180),
+    };
+
+    private static final double[] RADII = {10, 500, 5000, 50000};
+
+    @Test
+    public void pointsInsideTheCircleAreCovered() throws Exception {
+        Random random = new Random(42);
+        for (GeoLocation center : CENTERS) {
+            for (double radius : RADII) {
+                for (int precision = 4; precision <= 8; precision++) {
+                    CircleCover cover = CircleCover.atLocation(center, radius, precision, 1 << 16);
+                    if (!cover.isComplete()) {
+                        continue;
+                    }
+                    for (int i = 0; i < POINTS_PER_CIRCLE; i++) {
+                        double[] point = randomPointInCircle(random, center, radius);
+                        assertTrue(center + " r=" + radius + " p=" + precision + " misses " + point[0] + ", " + point[1],
+                                covers(cover.getRanges(), GeoHash.encode(point[0], point[1], precision)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void circleBorderIsCovered() throws Exception {
+        for (GeoLocation center : CENTERS) {
+            for (double radius : RADII) {
+                CircleCover cover = CircleCover.atLocation(center, radius, 6, 1 << 16);
+                if (!cover.isComplete()) {
+                    continue;
+                }
+                for (int bearing = 0; bearing < 360; bearing++) {
+                    double[] point = destination(center, radius, bearing);
+                    if (GeoUtils.distance(center.latitude, center.longitude, point[0], point[1]) > radius) {
+                        continue;
+                    }
+                    assertTrue(center + " r=" + radius + " misses " + point[0] + ", " + point[1],
+                            covers(cover.getRanges(), GeoHash.encode(point[0], point[1], 6)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void circleAcrossTheAntimeridianCoversBothSides() throws Exception {
+        CircleCover cover = CircleCover.atLocation(new GeoLocation(10, 180), 20000, 5);
+        assertTrue(covers(cover.getRanges(), GeoHash.encode(10, 179.95, 5)));
+        assertTrue(covers(cover.getRanges(), GeoHash.encode(10, -179.95, 5)));
+    }
+
+    @Test
+    public void queriesHoldTheCellsOfTheCover() throws Exception {
+        for (GeoLocation center : CENTERS) {
+            for (double radius : RADII) {
+                for (int precision = 4; precision <= 8; precision++) {
+                    CircleCover cover = CircleCover.atLocation(center, radius, precision, 1 << 16);
+                    if (!cover.isComplete()) {
+                        continue;
+                    }
+                    long cellCount = 0;
+                    for (GeoHashQuery query : cover.toQueries()) {
+                        cellCount += query.getCellRange(precision).count();
+                    }
+                    assertEquals(center + " r=" + radius + " p=" + precision, cover.getCellCount(), cellCount);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rangesAreSortedAndDisjoint() throws Exception {
+        for (GeoLocation center : CENTERS) {
+            CircleCover cover = CircleCover.atLocation(center, 5000, 6);
+            List<CellRange> ranges = cover.getRanges();
+            long cellCount = 0;
+            for (int i = 0; i < ranges.size(); i++) {
+                assertTrue(ranges.get(i).getFirst() <= ranges.get(i).getLast());
+                if (i > 0) {
+                    // ranges next to each other would have been merged
+                    assertTrue(ranges.get(i - 1).getLast() + 1 < ranges.get(i).getFirst());
+                }
+                cellCount += ranges.get(i).count();
+            }
+            assertEquals(cover.getCellCount(), cellCount);
+        }
+    }
+
+    @Test
+    public void coverGivenUpBeyondMaxCells() throws Exception {
+        CircleCover cover = CircleCover.atLocation(new GeoLocation(48.8566, 2.3522), 5000, 8, 100);
+        assertFalse(cover.isComplete());
+        assertTrue(CircleCover.atLocation(new GeoLocation(48.8566, 2.3522), 5000, 6, 1000).isComplete());
+    }
+
+    //  Random point uniformly spread in the circle, on the sphere of GeoUtils.distance
+    static double[] randomPointInCircle(Random random, GeoLocation center, double radius) {
+        return destination(center, radius * Math.sqrt(random.nextDouble()), random.nextDouble() * 360);
+    }
+
+    //  Point at a distance and bearing of a center, pulled back slightly so rounding never puts it outside the circle
+    static double[] destination(GeoLocation center, double distance, double bearing) {
+        double angle = Math.max(0, distance - 0.001) / CellCover.EARTH_RADIUS;
+        double latitude = Math.toRadians(center.latitude);
+        double longitude = Math.toRadians(center.longitude);
+        double theta = Math.toRadians(bearing);
+        double sinLatitude = Math.sin(latitude) * Math.cos(angle)
+                + Math.cos(latitude) * Math.sin(angle) * Math.cos(theta);
+        double pointLatitude = Math.asin(Math.max(-1, Math.min(1, sinLatitude)));
+        double pointLongitude = longitude + Math.atan2(Math.sin(theta) * Math.sin(angle) * Math.cos(latitude),
+                Math.cos(angle) - Math.sin(latitude) * sinLatitude);
+        return new double[]{
+                Math.max(-90, Math.min(90, Math.toDegrees(pointLatitude))),
+                GeoUtils.wrapLongitude(Math.toDegrees(pointLongitude))
+        };
+    }
+
+    static boolean covers(List<CellRange> ranges, long cell) {
+        int low = 0;
+        int high = ranges.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            CellRange range = ranges.get(middle);
+            if (cell < range.getFirst()) {
+                high = middle - 1;
+            } else if (cell > range.getLast()) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+}
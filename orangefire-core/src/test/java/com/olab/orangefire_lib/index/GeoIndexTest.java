@@ -0,0 +1,78 @@
+package com.olab.orangefire_lib.index;
+
+import com.olab.orangefire_lib.GeoLocation;
+import com.olab.orangefire_lib.util.GeoUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeoIndexTest {
+
+    private static final GeoLocation[] CENTERS = {
+            new GeoLocation(48.8566, 2.3522),
+            new GeoLocation(0, 180),
+            new GeoLocation(45, -179.99),
+            new GeoLocation(89.95, 10),
+            new GeoLocation(-89.95, -170),
+    };
+
+    private static final double[] RADII = {100, 1000, 10000, 100000};
+
+    @Test
+    public void queryRadiusFindsExactlyTheKeysWithinTheRadius() throws Exception {
+        Random random = new Random(42);
+        GeoIndex index = new GeoIndex();
+        Map<String, GeoLocation> locations = new HashMap<String, GeoLocation>();
+        int keyCount = 0;
+        for (GeoLocation center : CENTERS) {
+            for (int i = 0; i < 5000; i++) {
+                // dense around the center and sparse farther away
+                double spread = i % 2 == 0 ? 0.02 : 2;
+                double latitude = Math.max(-90, Math.min(90, center.latitude + (random.nextDouble() - 0.5) * spread));
+                double longitude = GeoUtils.wrapLongitude(center.longitude + (random.nextDouble() - 0.5) * spread);
+                String key = "key" + keyCount++;
+                index.put(key, latitude, longitude);
+                locations.put(key, new GeoLocation(latitude, longitude));
+            }
+        }
+        assertEquals(locations.size(), index.size());
+        for (GeoLocation center : CENTERS) {
+            for (double radius : RADII) {
+                List<String> expected = new ArrayList<String>();
+                for (Map.Entry<String, GeoLocation> entry : locations.entrySet()) {
+                    if (GeoUtils.distance(center, entry.getValue()) <= radius) {
+                        expected.add(entry.getKey());
+                    }
+                }
+                List<String> found = index.queryRadius(center, radius);
+                Collections.sort(expected);
+                Collections.sort(found);
+                assertEquals(center + " r=" + radius, expected, found);
+            }
+        }
+    }
+
+    @Test
+    public void movedAndRemovedKeysAreQueriedAtTheirNewLocation() throws Exception {
+        GeoIndex index = new GeoIndex();
+        GeoLocation paris = new GeoLocation(48.8566, 2.3522);
+        GeoLocation tokyo = new GeoLocation(35.6762, 139.6503);
+        index.put("a", paris);
+        index.put("b", paris);
+        index.put("a", tokyo);
+        assertEquals(Collections.singletonList("b"), index.queryRadius(paris, 1000));
+        assertEquals(Collections.singletonList("a"), index.queryRadius(tokyo, 1000));
+        assertTrue(index.remove("b"));
+        assertFalse(index.remove("b"));
+        assertTrue(index.queryRadius(paris, 1000).isEmpty());
+        assertEquals(1, index.size());
+    }
+}
@@ -0,0 +1,63 @@
+package com.olab.orangefire_lib.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CircleFilterTest {
+
+    private static final int POINTS = 4096;
+
+    @Test
+    public void containsAllAgreesWithContains() throws Exception {
+        Random random = new Random(42);
+        // centers near Paris, the poles and the antimeridian, radii from meters to beyond half the earth
+        double[][] centers = {{48.8566, 2.3522}, {89.9, 0}, {-89.9, 120}, {0, 179.99}, {0, -179.99}, {-33.87, 151.21}};
+        double[] radii = {10, 1000, 100000, 5000000, 25000000};
+        double[] latitudes = new double[POINTS];
+        double[] longitudes = new double[POINTS];
+        boolean[] result = new boolean[POINTS];
+        for (double[] center : centers) {
+            for (double radius : radii) {
+                CircleFilter filter = new CircleFilter(center[0], center[1], radius);
+                double latitudeDelta = Math.min(180, 2 * GeoUtils.distanceToLatitudeDegrees(radius));
+                for (int i = 0; i < POINTS; i++) {
+                    latitudes[i] = Math.max(-90, Math.min(90,
+                            center[0] + (random.nextDouble() * 2 - 1) * latitudeDelta));
+                    longitudes[i] = random.nextDouble() * 360 - 180;
+                    if (i % 2 == 0) {
+                        // half of the points near the longitude of the center
+                        longitudes[i] = GeoUtils.wrapLongitude(center[1]
+                                + (random.nextDouble() * 2 - 1) * Math.min(180, 4 * latitudeDelta));
+                    }
+                }
+                int count = POINTS - random.nextInt(16);
+                // results of the previous batch are overwritten
+                Arrays.fill(result, true);
+                int inside = filter.containsAll(latitudes, longitudes, count, result);
+                int expectedInside = 0;
+                for (int i = 0; i < count; i++) {
+                    boolean expected = filter.contains(latitudes[i], longitudes[i]);
+                    assertEquals(latitudes[i] + ", " + longitudes[i], expected, result[i]);
+                    expectedInside += expected ? 1 : 0;
+                }
+                assertEquals(expectedInside, inside);
+            }
+        }
+    }
+
+    @Test
+    public void containsAllLeavesPointsBeyondCountUntouched() throws Exception {
+        CircleFilter filter = new CircleFilter(48.8566, 2.3522, 1000);
+        double[] latitudes = {48.8566, 48.8566, 48.8566};
+        double[] longitudes = {2.3522, 2.3522, 2.3522};
+        boolean[] result = {false, false, false};
+        assertEquals(2, filter.containsAll(latitudes, longitudes, 2, result));
+        assertTrue(result[0]);
+        assertTrue(result[1]);
+        assertFalse(result[2]);
+    }
+}
@@ -0,0 +1,83 @@
+package com.olab.orangefire_lib.util;
+
+import com.olab.orangefire_lib.GeoLocation;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LocationCodecTest {
+
+    // half of the 1e-7 degree step of the encoding
+    private static final double TOLERANCE = 5e-8;
+
+    @Test
+    public void decodeReturnsTheEncodedLocation() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            assertRoundTrip(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+        }
+    }
+
+    @Test
+    public void decodeReturnsTheEncodedLimits() throws Exception {
+        double[] latitudes = {-90, -89.9999999, -89.99999994, -1e-9, 0, 1e-9, 89.99999994, 89.9999999, 90};
+        double[] longitudes = {-180, -179.9999999, -179.99999994, -1e-9, 0, 1e-9, 179.99999994, 179.9999999, 180};
+        for (double latitude : latitudes) {
+            for (double longitude : longitudes) {
+                assertRoundTrip(latitude, longitude);
+            }
+        }
+    }
+
+    @Test
+    public void encodedLocationsHaveTheEncodedLength() throws Exception {
+        assertEquals(LocationCodec.ENCODED_LENGTH, LocationCodec.encode(-90, -180).length());
+        assertEquals(LocationCodec.ENCODED_LENGTH, LocationCodec.encode(90, 180).length());
+        assertEquals(LocationCodec.encode(48.8566, 2.3522), LocationCodec.encode(new GeoLocation(48.8566, 2.3522)));
+    }
+
+    @Test
+    public void decodeRejectsInvalidStrings() throws Exception {
+        String valid = LocationCodec.encode(48.8566, 2.3522);
+        assertNotNull(LocationCodec.decode(valid));
+        assertNull(LocationCodec.decode(""));
+        assertNull(LocationCodec.decode(valid.substring(1)));
+        assertNull(LocationCodec.decode(valid + "0"));
+        // 'a' is not part of the geohash alphabet
+        assertNull(LocationCodec.decode("a" + valid.substring(1)));
+        assertNull(LocationCodec.decode(valid.toUpperCase()));
+        // the 2 highest bits are set
+        assertNull(LocationCodec.decode("8" + valid.substring(1)));
+        assertNull(LocationCodec.decode("zzzzzzzzzzzzz"));
+        // latitude and longitude beyond their range
+        assertNull(LocationCodec.decode("7zzzzzzzzzzzz"));
+        assertNull(LocationCodec.decode(withFixedPoint(1800000001L, 0)));
+        assertNull(LocationCodec.decode(withFixedPoint(0, 3600000001L)));
+        assertNotNull(LocationCodec.decode(withFixedPoint(1800000000L, 3600000000L)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeRejectsInvalidLatitude() throws Exception {
+        LocationCodec.encode(90.0000001, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeRejectsInvalidLongitude() throws Exception {
+        LocationCodec.encode(0, -180.0000001);
+    }
+
+    private static void assertRoundTrip(double latitude, double longitude) {
+        GeoLocation decoded = LocationCodec.decode(LocationCodec.encode(latitude, longitude));
+        assertNotNull(latitude + ", " + longitude, decoded);
+        assertEquals(latitude, decoded.latitude, TOLERANCE);
+        assertEquals(longitude, decoded.longitude, TOLERANCE);
+    }
+
+    //  Encoded string of offset fixed-point coordinates, written like LocationCodec.encode
+    private static String withFixedPoint(long fixedLatitude, long fixedLongitude) {
+        return Base32Utils.bitsToBase32((fixedLatitude << 32) | fixedLongitude, LocationCodec.ENCODED_LENGTH);
+    }
+}
@@ -0,0 +1,19 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.Map;
+
+/**
+ * Classes implementing this interface can be used to learn the outcome of a batch of writes to GeoFire.
+ */
+public interface BatchCompletionListener {
+
+    /**
+     * Called once, after every key of the batch was written or failed.
+     * @param failures The keys that were not written, with the error of each of them. Empty if the whole batch
+     *                 was written.
+     */
+    void onComplete(Map<String, WebcomError> failures);
+
+}
@@ -0,0 +1,298 @@
+package com.olab.orangefire_lib;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last known content of cells, so a query subscribing to a cell can report its keys before the cell
+ * is downloaded. Such keys are stale until the download confirms them, see GeoQuery.isKeyStale. The cache keeps the
+ * most recently used cells up to a maximal number of locations, and ignores cells saved longer ago than a maximal
+ * age.
+ *
+ * A cache created with a file loads it on creation and appends every cell put in it to the file, as the cell is
+ * downloaded or released, so the cache survives the process being killed without a call to save. A cell appended
+ * again replaces its previous content when the file is loaded. The file is rewritten without the replaced, evicted
+ * and expired cells on save, when its GeoFire is shut down, and once it holds twice as many locations as the cache.
+ * A cache created without a file lives in memory only, like the cache of released cells of GeoFire. The cache is
+ * thread safe.
+ */
+public class CellCache {
+
+    public static final int DEFAULT_MAX_LOCATIONS = 100000;
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+    // Version of the file format
+    private static final int FILE_VERSION = 2;
+
+    // Marks the start of a cell in the file
+    private static final int CELL_RECORD = 1;
+
+    // Number of locations appended to the file below which it is never rewritten
+    private static final int MIN_COMPACTION_LOCATIONS = 1000;
+
+    private static final class Entry {
+        final long savedAtMillis;
+        final Map<String, GeoLocation> locations;
+
+        Entry(long savedAtMillis, Map<String, GeoLocation> locations) {
+            this.savedAtMillis = savedAtMillis;
+            this.locations = locations;
+        }
+    }
+
+    private final int maxLocations;
+    private final long maxAgeMillis;
+    private final PersistedFile file;
+    private final LinkedHashMap<String, Entry> entriesByCell = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private int locationCount;
+    // cells and locations in the file, including the replaced and evicted ones
+    private int fileLocationCount;
+
+    /**
+     * Creates a cache holding up to DEFAULT_MAX_LOCATIONS locations saved in the last DEFAULT_MAX_AGE_MILLIS.
+     *
+     * @param file File the cache is persisted in, may be null
+     */
+    public CellCache(File file) {
+        this(DEFAULT_MAX_LOCATIONS, DEFAULT_MAX_AGE_MILLIS, file);
+    }
+
+    /**
+     * Creates a cache persisted in a file. The content of the file is loaded if it exists.
+     *
+     * @param maxLocations Maximal number of locations, the least recently used cells are forgotten first
+     * @param maxAgeMillis Age after which the content of a cell is no longer used
+     * @param file         File the cache is persisted in, may be null
+     */
+    public CellCache(int maxLocations, long maxAgeMillis, File file) {
+        if (maxLocations <= 0) {
+            throw new IllegalArgumentException("Maximal number of locations must be positive: " + maxLocations);
+        }
+        if (maxAgeMillis <= 0) {
+            throw new IllegalArgumentException("Maximal age must be positive: " + maxAgeMillis);
+        }
+        this.maxLocations = maxLocations;
+        this.maxAgeMillis = maxAgeMillis;
+        this.file = file == null ? null : new PersistedFile(file, FILE_VERSION, "CellCache");
+        if (file != null) {
+            load();
+        }
+    }
+
+    /**
+     * @return A copy of the last known content of the cell, or null if it is unknown or too old.
+     */
+    synchronized Map<String, GeoLocation> get(String cell) {
+        Entry entry = this.entriesByCell.get(cell);
+        if (entry == null) {
+            return null;
+        }
+        if (isExpired(entry, System.currentTimeMillis())) {
+            forget(cell);
+            return null;
+        }
+        return new HashMap<String, GeoLocation>(entry.locations);
+    }
+
+    /**
+     * Removes a cell from the cache, e.g. as it is subscribed again and its content is kept by the subscription.
+     *
+     * @return The last known content of the cell, or null if it is unknown or too old.
+     */
+    synchronized Map<String, GeoLocation> take(String cell) {
+        Entry entry = this.entriesByCell.get(cell);
+        if (entry == null) {
+            return null;
+        }
+        forget(cell);
+        return isExpired(entry, System.currentTimeMillis()) ? null : entry.locations;
+    }
+
+    /**
+     * Replaces the content of a cell, taking a copy of the locations, and appends it to the file of the cache on the
+     * calling thread.
+     */
+    synchronized void put(final String cell, Map<String, GeoLocation> locations) {
+        final Entry entry = new Entry(System.currentTimeMillis(), new HashMap<String, GeoLocation>(locations));
+        put(cell, entry);
+        trim();
+        if (this.file == null) {
+            return;
+        }
+        try {
+            if (this.fileLocationCount + entry.locations.size() + 1
+                    > Math.max(MIN_COMPACTION_LOCATIONS, 2 * (this.locationCount + this.entriesByCell.size()))) {
+                save();
+            } else {
+                this.file.append(new PersistedFile.Writer() {
+                    @Override
+                    public void write(DataOutputStream out) throws IOException {
+                        writeCell(out, cell, entry);
+                    }
+                });
+                this.fileLocationCount += entry.locations.size() + 1;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            Log.e("OrangeFire", "OrangeFire:CellCache Failed to write " + this.file.getFile() + ".");
+        }
+    }
+
+    private void put(String cell, Entry entry) {
+        Entry previous = this.entriesByCell.put(cell, entry);
+        if (previous != null) {
+            this.locationCount -= previous.locations.size();
+        }
+        this.locationCount += entry.locations.size();
+    }
+
+    private void forget(String cell) {
+        Entry previous = this.entriesByCell.remove(cell);
+        if (previous != null) {
+            this.locationCount -= previous.locations.size();
+        }
+    }
+
+    //  Forgets the least recently used cells until the cache holds at most its maximal number of locations
+    private void trim() {
+        Iterator<Entry> entries = this.entriesByCell.values().iterator();
+        while (this.locationCount > this.maxLocations && entries.hasNext()) {
+            this.locationCount -= entries.next().locations.size();
+            entries.remove();
+        }
+    }
+
+    private boolean isExpired(Entry entry, long nowMillis) {
+        return nowMillis - entry.savedAtMillis > this.maxAgeMillis;
+    }
+
+    /**
+     * @return The number of cells in the cache.
+     */
+    public synchronized int size() {
+        return this.entriesByCell.size();
+    }
+
+    /**
+     * @return The number of locations in the cache.
+     */
+    public synchronized int getLocationCount() {
+        return this.locationCount;
+    }
+
+    public int getMaxLocations() {
+        return this.maxLocations;
+    }
+
+    public long getMaxAgeMillis() {
+        return this.maxAgeMillis;
+    }
+
+    /**
+     * Forgets every cell, the file of the cache is emptied too.
+     */
+    public synchronized void clear() {
+        this.entriesByCell.clear();
+        this.locationCount = 0;
+        try {
+            save();
+        } catch (IOException e) {
+            e.printStackTrace();
+            Log.e("OrangeFire", "OrangeFire:CellCache Failed to write " + this.file.getFile() + ".");
+        }
+    }
+
+    /**
+     * Rewrites the file of the cache, if it has one, with the current content of the cache only. The file is replaced
+     * atomically, from the least to the most recently used cell, so loading it restores the order of use. Cells too
+     * old are left out.
+     *
+     * @throws IOException If the file could not be written
+     */
+    public synchronized void save() throws IOException {
+        if (this.file == null) {
+            return;
+        }
+        long nowMillis = System.currentTimeMillis();
+        Iterator<Entry> entries = this.entriesByCell.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (isExpired(entry, nowMillis)) {
+                this.locationCount -= entry.locations.size();
+                entries.remove();
+            }
+        }
+        this.file.replace(new PersistedFile.Writer() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                for (Map.Entry<String, Entry> cellEntry : entriesByCell.entrySet()) {
+                    writeCell(out, cellEntry.getKey(), cellEntry.getValue());
+                }
+            }
+        });
+        this.fileLocationCount = this.locationCount + this.entriesByCell.size();
+    }
+
+    private static void writeCell(DataOutputStream out, String cell, Entry entry) throws IOException {
+        out.writeByte(CELL_RECORD);
+        out.writeUTF(cell);
+        out.writeLong(entry.savedAtMillis);
+        out.writeInt(entry.locations.size());
+        for (Map.Entry<String, GeoLocation> location : entry.locations.entrySet()) {
+            out.writeUTF(location.getKey());
+            out.writeDouble(location.getValue().latitude);
+            out.writeDouble(location.getValue().longitude);
+        }
+    }
+
+    private void load() {
+        final long nowMillis = System.currentTimeMillis();
+        boolean complete = this.file.load(new PersistedFile.Reader() {
+            @Override
+            public void read(DataInputStream in) throws IOException {
+                int record;
+                while ((record = in.read()) >= 0) {
+                    if (record != CELL_RECORD) {
+                        throw new IOException("Unknown record " + record);
+                    }
+                    String cell = in.readUTF();
+                    long savedAtMillis = in.readLong();
+                    int locationCount = in.readInt();
+                    Map<String, GeoLocation> locations = new HashMap<String, GeoLocation>();
+                    for (int j = 0; j < locationCount; j++) {
+                        String key = in.readUTF();
+                        double latitude = in.readDouble();
+                        double longitude = in.readDouble();
+                        if (GeoLocation.coordinatesValid(latitude, longitude)) {
+                            locations.put(key, new GeoLocation(latitude, longitude));
+                        }
+                    }
+                    Entry entry = new Entry(savedAtMillis, locations);
+                    if (!isExpired(entry, nowMillis)) {
+                        put(cell, entry);
+                    }
+                    fileLocationCount += locationCount + 1;
+                }
+            }
+        });
+        trim();
+        if (!complete) {
+            // appending after a partial cell would make the next cells unreadable
+            try {
+                save();
+            } catch (IOException e) {
+                e.printStackTrace();
+                Log.e("OrangeFire", "OrangeFire:CellCache Failed to write " + this.file.getFile() + ".");
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.olab.orangefire_lib;
+
+import com.olab.orangefire_lib.backend.GeoFireBackend;
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shares one backend subscription per cell between all queries of a GeoFire instance. The multiplexer keeps the
+ * current content of every subscribed cell, so a query attaching to a cell that is already subscribed gets the keys
+ * replayed without another download.
+ *
+ * A newly subscribed cell is seeded with its last known keys, reported as added at once and marked stale. They come
+ * from the cache of released cells, which keeps the content of cells released recently so panning back and forth
+ * does not wait for the same cells again, or else from the cell cache. Once the cell is downloaded, stale keys
+ * missing from it are reported as removed and stale keys that moved as changed. The content of a cell is written to
+ * the cell cache when it is downloaded and when it is released, and to the cache of released cells when it is
+ * released.
+ *
+ * Listeners are called without holding the multiplexer lock, except for the replay to a listener that is attaching.
+ * Callers of attach must therefore hold the lock of their listener, as GeoQuery does.
+ */
+class CellSubscriptionMultiplexer {
+
+    interface CellListener {
+
+        void onChildAdded(String cell, String key, GeoLocation location);
+
+        void onChildChanged(String cell, String key, GeoLocation location);
+
+        void onChildRemoved(String cell, String key);
+
+        void onCellReady(String cell);
+
+        void onCellError(String cell, WebcomError webcomError);
+    }
+
+    private final class CellSubscription implements GeoFireBackend.ChildListener, GeoFireBackend.ValueListener {
+        final String cell;
+        final List<CellListener> listeners = new ArrayList<CellListener>();
+        final Map<String, GeoLocation> locations = new HashMap<String, GeoLocation>();
+        // keys seeded from the cache and not confirmed by the backend yet
+        final Set<String> staleKeys = new HashSet<String>();
+        boolean ready;
+
+        CellSubscription(String cell) {
+            this.cell = cell;
+        }
+
+        //  Listeners to notify, or null if this subscription was released in the meantime
+        private List<CellListener> targets() {
+            if (subscriptions.get(this.cell) != this) {
+                return null;
+            }
+            return new ArrayList<CellListener>(this.listeners);
+        }
+
+        @Override
+        public void onChildAdded(String key, GeoLocation location) {
+            List<CellListener> targets;
+            synchronized (CellSubscriptionMultiplexer.this) {
+                targets = targets();
+                this.locations.put(key, location);
+                this.staleKeys.remove(key);
+            }
+            if (targets != null) {
+                for (CellListener listener : targets) {
+                    listener.onChildAdded(this.cell, key, location);
+                }
+            }
+        }
+
+        @Override
+        public void onChildChanged(String key, GeoLocation location) {
+            List<CellListener> targets;
+            synchronized (CellSubscriptionMultiplexer.this) {
+                targets = targets();
+                this.locations.put(key, location);
+                this.staleKeys.remove(key);
+            }
+            if (targets != null) {
+                for (CellListener listener : targets) {
+                    listener.onChildChanged(this.cell, key, location);
+                }
+            }
+        }
+
+        @Override
+        public void onChildRemoved(String key) {
+            List<CellListener> targets;
+            synchronized (CellSubscriptionMultiplexer.this) {
+                targets = targets();
+                this.locations.remove(key);
+                this.staleKeys.remove(key);
+            }
+            if (targets != null) {
+                for (CellListener listener : targets) {
+                    listener.onChildRemoved(this.cell, key);
+                }
+            }
+        }
+
+        @Override
+        public void onDataChange(String cell, Map<String, GeoLocation> locations) {
+            List<CellListener> targets;
+            List<String> removedKeys = new ArrayList<String>();
+            Map<String, GeoLocation> changedLocations = new HashMap<String, GeoLocation>();
+            synchronized (CellSubscriptionMultiplexer.this) {
+                targets = targets();
+                // the downloaded content is authoritative for the keys the cache seeded
+                for (String key : this.staleKeys) {
+                    GeoLocation location = locations.get(key);
+                    if (location == null) {
+                        this.locations.remove(key);
+                        removedKeys.add(key);
+                    } else if (!location.equals(this.locations.get(key))) {
+                        this.locations.put(key, location);
+                        changedLocations.put(key, location);
+                    }
+                }
+                this.staleKeys.clear();
+                this.ready = true;
+                if (targets != null && cellCache != null) {
+                    cellCache.put(this.cell, this.locations);
+                }
+            }
+            if (targets != null) {
+                for (CellListener listener : targets) {
+                    for (String key : removedKeys) {
+                        listener.onChildRemoved(this.cell, key);
+                    }
+                    for (Map.Entry<String, GeoLocation> entry : changedLocations.entrySet()) {
+                        listener.onChildChanged(this.cell, entry.getKey(), entry.getValue());
+                    }
+                    listener.onCellReady(this.cell);
+                }
+            }
+        }
+
+        @Override
+        public void onCancelled(WebcomError webcomError) {
+            List<CellListener> targets;
+            synchronized (CellSubscriptionMultiplexer.this) {
+                targets = targets();
+            }
+            if (targets != null) {
+                for (CellListener listener : targets) {
+                    listener.onCellError(this.cell, webcomError);
+                }
+            }
+        }
+    }
+
+    private final GeoFireBackend backend;
+    private final Map<String, CellSubscription> subscriptions = new HashMap<String, CellSubscription>();
+    private CellCache cellCache;
+    private CellCache releasedCells;
+
+    CellSubscriptionMultiplexer(GeoFireBackend backend, CellCache releasedCells) {
+        this.backend = backend;
+        this.releasedCells = releasedCells;
+    }
+
+    /**
+     * @param cellCache The cache seeding newly subscribed cells, or null to download them only
+     */
+    synchronized void setCellCache(CellCache cellCache) {
+        this.cellCache = cellCache;
+    }
+
+    /**
+     * @param releasedCells The cache of recently released cells, or null to forget cells as they are released
+     */
+    synchronized void setReleasedCells(CellCache releasedCells) {
+        this.releasedCells = releasedCells;
+    }
+
+    /**
+     * Attaches a listener to a cell, subscribing the cell in the backend if it is not subscribed yet. Keys already
+     * known for the cell are replayed to the listener before this method returns.
+     */
+    synchronized void attach(String cell, CellListener listener) {
+        CellSubscription subscription = this.subscriptions.get(cell);
+        if (subscription == null) {
+            subscription = new CellSubscription(cell);
+            subscription.listeners.add(listener);
+            this.subscriptions.put(cell, subscription);
+            Map<String, GeoLocation> cached = this.releasedCells == null ? null : this.releasedCells.take(cell);
+            if (cached == null && this.cellCache != null) {
+                cached = this.cellCache.get(cell);
+            }
+            if (cached != null) {
+                subscription.locations.putAll(cached);
+                subscription.staleKeys.addAll(cached.keySet());
+                for (Map.Entry<String, GeoLocation> entry : cached.entrySet()) {
+                    listener.onChildAdded(cell, entry.getKey(), entry.getValue());
+                }
+            }
+            this.backend.addChildListener(cell, subscription);
+            this.backend.readCell(cell, subscription);
+            return;
+        }
+        subscription.listeners.add(listener);
+        for (Map.Entry<String, GeoLocation> entry : subscription.locations.entrySet()) {
+            listener.onChildAdded(cell, entry.getKey(), entry.getValue());
+        }
+        if (subscription.ready) {
+            listener.onCellReady(cell);
+        }
+    }
+
+    /**
+     * Detaches a listener from a cell, the backend subscription is released with its last listener.
+     */
+    synchronized void detach(String cell, CellListener listener) {
+        CellSubscription subscription = this.subscriptions.get(cell);
+        if (subscription == null || !subscription.listeners.remove(listener)) {
+            return;
+        }
+        if (subscription.listeners.isEmpty()) {
+            this.subscriptions.remove(cell);
+            this.backend.removeChildListener(cell, subscription);
+            if (subscription.ready && this.cellCache != null) {
+                this.cellCache.put(cell, subscription.locations);
+            }
+            if (subscription.ready && this.releasedCells != null) {
+                this.releasedCells.put(cell, subscription.locations);
+            }
+        }
+    }
+
+    /**
+     * @return True if the key was seeded from the cache into a subscribed cell and is not confirmed by the backend
+     * yet.
+     */
+    synchronized boolean isStale(String cell, String key) {
+        CellSubscription subscription = this.subscriptions.get(cell);
+        return subscription != null && subscription.staleKeys.contains(key);
+    }
+
+    /**
+     * Writes the current content of every downloaded cell to the cache.
+     */
+    synchronized void saveToCache() {
+        if (this.cellCache == null) {
+            return;
+        }
+        for (CellSubscription subscription : this.subscriptions.values()) {
+            if (subscription.ready) {
+                this.cellCache.put(subscription.cell, subscription.locations);
+            }
+        }
+    }
+
+    /**
+     * @return The number of cells subscribed in the backend.
+     */
+    synchronized int getSubscribedCellCount() {
+        return this.subscriptions.size();
+    }
+}
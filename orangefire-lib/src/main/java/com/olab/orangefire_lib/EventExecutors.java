@@ -0,0 +1,50 @@
+package com.olab.orangefire_lib;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for the events of GeoFire queries, to be passed to the GeoFire constructors.
+ *
+ * Whatever the executor, every listener receives its events one at a time and in order. Different listeners run in
+ * parallel if the executor is concurrent, so a slow listener only delays its own events.
+ */
+public final class EventExecutors {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private EventExecutors() {
+    }
+
+    /**
+     * Returns an executor running the events on the thread that produced them, usually a thread of the backend.
+     * Listeners are called while their query is locked, so they must not block on other threads using the query.
+     *
+     * @return The direct executor.
+     */
+    public static Executor direct() {
+        return DIRECT;
+    }
+
+    /**
+     * Creates an executor starting a virtual thread for every task, which gives every busy listener its own virtual
+     * thread. The caller owns the executor and shuts it down once the GeoFire instance is shut down.
+     *
+     * @return A new executor backed by virtual threads.
+     * @throws UnsupportedOperationException If the runtime has no virtual threads, i.e. is older than Java 21.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        }
+    }
+}
@@ -30,16 +30,33 @@ package com.olab.orangefire_lib;
 
 import android.util.Log;
 
+import com.olab.orangefire_lib.backend.GeoFireBackend;
+import com.olab.orangefire_lib.backend.WebcomBackend;
+import com.olab.orangefire_lib.core.BoundingBox;
 import com.olab.orangefire_lib.core.GeoHash;
+import com.olab.orangefire_lib.core.QueryPlan;
+import com.olab.orangefire_lib.core.QueryPlanCache;
 import com.olab.orangefire_lib.orangefire.Utility;
+import com.olab.orangefire_lib.util.Base32Utils;
 import com.orange.webcom.sdk.DataSnapshot;
 import com.orange.webcom.sdk.OnComplete;
 import com.orange.webcom.sdk.Webcom;
 import com.orange.webcom.sdk.WebcomError;
 import com.orange.webcom.sdk.WebcomException;
 
+import java.io.IOException;
 import java.lang.Throwable;
-import java.util.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A GeoFire instance is used to store geo location data in Webcom database.
@@ -83,33 +100,99 @@ public class GeoFire {
         }
     }
 
-    static GeoLocation getLocationValue(DataSnapshot dataSnapshot) {
-        try {
-            Map<String, Object> data = null;
-            try {
-                data = dataSnapshot.valueMap(Object.class);
-                Number latitudeObj = (Number) data.get("0");
-                Number longitudeObj = (Number) data.get("1");
-                double latitude = latitudeObj.doubleValue();
-                double longitude = longitudeObj.doubleValue();
-                if (data.size() == 2 && GeoLocation.coordinatesValid(latitude, longitude)) {
-                    return new GeoLocation(latitude, longitude);
-                } else {
-                    return null;
+    /**
+     * Collects the outcome of the keys of a batch written key by key.
+     */
+    private static class BatchCompletion {
+        private final BatchCompletionListener listener;
+        private final Map<String, WebcomError> failures;
+        private int remainingKeys;
+
+        BatchCompletion(BatchCompletionListener listener, Map<String, WebcomError> failures, int keys) {
+            this.listener = listener;
+            this.failures = failures;
+            this.remainingKeys = keys;
+        }
+
+        OnComplete forKey(final String key) {
+            return new OnComplete() {
+                @Override
+                public void onComplete() {
+                    keyDone(key, null);
                 }
-            } catch (WebcomException e) {
-                e.printStackTrace();
-            }
 
-        } catch (NullPointerException | ClassCastException e) {
-            e.printStackTrace();
-            return null;
+                @Override
+                public void onError(WebcomError webcomError) {
+                    keyDone(key, webcomError);
+                }
+            };
         }
-        return null;
+
+        private void keyDone(String key, WebcomError webcomError) {
+            synchronized (this) {
+                if (webcomError != null) {
+                    this.failures.put(key, webcomError);
+                }
+                if (--this.remainingKeys > 0) {
+                    return;
+                }
+            }
+            this.listener.onComplete(this.failures);
+        }
+    }
+
+    /**
+     * Number of cells a query subscribes to at most while a coarser storage precision is available.
+     */
+    public static final int DEFAULT_TARGET_CELL_COUNT = 64;
+
+    /**
+     * Distance in kilometers beyond which a nearest keys query stops looking for keys, unless another one is given.
+     */
+    public static final double DEFAULT_NEAREST_MAX_DISTANCE = 50;
+
+    /**
+     * Number of cells a nearest keys query reads at most, unless another one is given. It covers a circle of
+     * DEFAULT_NEAREST_MAX_DISTANCE anywhere but near the poles.
+     */
+    public static final int DEFAULT_NEAREST_MAX_CELLS = 16384;
+
+    /**
+     * Time after which a nearest keys query fails if it is not done, in milliseconds.
+     */
+    public static final long DEFAULT_NEAREST_TIMEOUT_MILLIS = 30 * 1000L;
+
+    /**
+     * Number of locations the default cache of released cells holds at most.
+     */
+    public static final int DEFAULT_RELEASED_CELLS_MAX_LOCATIONS = 20000;
+
+    /**
+     * Age after which the default cache of released cells no longer seeds a cell, in milliseconds.
+     */
+    public static final long DEFAULT_RELEASED_CELLS_MAX_AGE_MILLIS = 5 * 60 * 1000L;
+
+    static GeoLocation getLocationValue(DataSnapshot dataSnapshot) {
+        return WebcomBackend.getLocationValue(dataSnapshot);
     }
 
     private final Webcom databaseReference;
+    private final GeoFireBackend backend;
     private final EventRaiser eventRaiser;
+    // set if the events are raised on an executor of the caller
+    private final Executor eventExecutor;
+    private final QueryPlanCache queryPlanCache = new QueryPlanCache();
+    private final CellSubscriptionMultiplexer cellSubscriptions;
+    private ScheduledExecutorService scheduler;
+    private volatile KeyCellIndex keyCellIndex = new KeyCellIndex();
+    private volatile CellCache cellCache;
+    private volatile CellCache releasedCells = new CellCache(DEFAULT_RELEASED_CELLS_MAX_LOCATIONS,
+            DEFAULT_RELEASED_CELLS_MAX_AGE_MILLIS, null);
+    private volatile WriteBehindBuffer writeBehindBuffer;
+    // precisions of the cells every key is written to, ascending
+    private volatile int[] storagePrecisions = {GeoHash.DEFAULT_PRECISION};
+    private volatile int targetCellCount = DEFAULT_TARGET_CELL_COUNT;
+    private volatile long nearestTimeoutMillis = DEFAULT_NEAREST_TIMEOUT_MILLIS;
 
     /**
      * Creates a new GeoFire instance at the given Webcom database reference.
@@ -117,32 +200,262 @@ public class GeoFire {
      * @param databaseReference The Webcom database reference this GeoFire instance uses
      */
     public GeoFire(Webcom databaseReference) {
+        this(databaseReference, new WebcomBackend(databaseReference), null);
+    }
+
+    /**
+     * Creates a new GeoFire instance storing its locations in the given backend.
+     *
+     * @param backend The backend this GeoFire instance uses
+     */
+    public GeoFire(GeoFireBackend backend) {
+        this(null, backend, null);
+    }
+
+    /**
+     * Creates a new GeoFire instance at the given Webcom database reference, raising the events of its queries on
+     * the given executor. See EventExecutors for a direct and a virtual thread executor.
+     *
+     * @param databaseReference The Webcom database reference this GeoFire instance uses
+     * @param eventExecutor     The executor running the listeners of the queries
+     */
+    public GeoFire(Webcom databaseReference, Executor eventExecutor) {
+        this(databaseReference, new WebcomBackend(databaseReference), checkNotNull(eventExecutor));
+    }
+
+    /**
+     * Creates a new GeoFire instance storing its locations in the given backend and raising the events of its
+     * queries on the given executor. See EventExecutors for a direct and a virtual thread executor.
+     *
+     * @param backend       The backend this GeoFire instance uses
+     * @param eventExecutor The executor running the listeners of the queries
+     */
+    public GeoFire(GeoFireBackend backend, Executor eventExecutor) {
+        this(null, backend, checkNotNull(eventExecutor));
+    }
+
+    private GeoFire(Webcom databaseReference, GeoFireBackend backend, Executor eventExecutor) {
         this.databaseReference = databaseReference;
-        EventRaiser eventRaiser;
-        try {
-            eventRaiser = new AndroidEventRaiser();
-        } catch (Throwable e) {
-            // We're not on Android, use the ThreadEventRaiser
-            eventRaiser = new ThreadEventRaiser();
+        this.backend = backend;
+        this.cellSubscriptions = new CellSubscriptionMultiplexer(backend, this.releasedCells);
+        this.eventExecutor = eventExecutor;
+        EventRaiser eventRaiser = null;
+        if (eventExecutor == null) {
+            try {
+                eventRaiser = new AndroidEventRaiser();
+            } catch (Throwable e) {
+                // We're not on Android, use the ThreadEventRaiser
+                eventRaiser = new ThreadEventRaiser();
+            }
         }
         this.eventRaiser = eventRaiser;
     }
 
+    private static Executor checkNotNull(Executor eventExecutor) {
+        if (eventExecutor == null) {
+            throw new NullPointerException();
+        }
+        return eventExecutor;
+    }
+
     /**
-     * @return The Webcom reference this GeoFire instance uses.
+     * @return The Webcom reference this GeoFire instance uses, or null if it was created with another backend.
      */
     public Webcom getDatabaseReference() {
         return this.databaseReference;
     }
 
-    Webcom getDatabaseRefForGeoHash(String geohash ) {
-        try {
-            return this.databaseReference.child(geohash);
-        } catch (WebcomException e) {
-            e.printStackTrace();
-            Log.e("OrangeFire","OrangeFire:getDatabaseRefForGeoHash  Error when getting reference for key.");
-            return null;
+    /**
+     * @return The backend this GeoFire instance stores its locations in.
+     */
+    public GeoFireBackend getBackend() {
+        return this.backend;
+    }
+
+    /**
+     * @return The cache of query plans shared by all queries of this GeoFire instance.
+     */
+    public QueryPlanCache getQueryPlanCache() {
+        return this.queryPlanCache;
+    }
+
+    /**
+     * @return The index of the cells keys were last written to by this GeoFire instance.
+     */
+    public KeyCellIndex getKeyCellIndex() {
+        return this.keyCellIndex;
+    }
+
+    /**
+     * Replaces the index of the cells keys were last written to, e.g. by an index persisted in a file. Keys missing
+     * from the index are written as new keys, without removing them from a previous cell.
+     *
+     * @param keyCellIndex The new index
+     */
+    public void setKeyCellIndex(KeyCellIndex keyCellIndex) {
+        if (keyCellIndex == null) {
+            throw new NullPointerException();
         }
+        this.keyCellIndex = keyCellIndex;
+    }
+
+    /**
+     * @return The cache of cell contents seeding the queries of this GeoFire instance, or null if there is none.
+     */
+    public CellCache getCellCache() {
+        return this.cellCache;
+    }
+
+    /**
+     * Sets a cache of cell contents, e.g. persisted in a file so queries report the keys known at the last run
+     * before the network answers. Cached keys are reported as entered at once and are stale until their cell is
+     * downloaded, see GeoQuery.isKeyStale. The ready event of a query still waits for the download.
+     *
+     * @param cellCache The cache, or null to download every cell before reporting its keys
+     */
+    public void setCellCache(CellCache cellCache) {
+        this.cellCache = cellCache;
+        this.cellSubscriptions.setCellCache(cellCache);
+    }
+
+    /**
+     * @return The cache of the cells released recently by the queries of this GeoFire instance, or null if there is
+     * none.
+     */
+    public CellCache getReleasedCells() {
+        return this.releasedCells;
+    }
+
+    /**
+     * Replaces the cache of the cells released recently by the queries of this GeoFire instance. When a query pans
+     * back to a released cell, the keys of the cell are reported at once from this cache and are stale until the
+     * cell is downloaded again, as with the cell cache. By default the last DEFAULT_RELEASED_CELLS_MAX_LOCATIONS
+     * locations released in the last DEFAULT_RELEASED_CELLS_MAX_AGE_MILLIS are kept in memory.
+     *
+     * @param releasedCells The cache, usually without a file, or null to forget cells as they are released
+     */
+    public void setReleasedCells(CellCache releasedCells) {
+        this.releasedCells = releasedCells;
+        this.cellSubscriptions.setReleasedCells(releasedCells);
+    }
+
+    /**
+     * Enables write-behind: added locations are buffered, only the latest location of every key is kept, and the
+     * buffer is sent in a single write grouped by cell after the flush interval or once it holds the maximal number
+     * of keys. Completion listeners are called once the buffered location is saved. Consumers see positions with up
+     * to the flush interval of delay.
+     *
+     * @param flushIntervalMillis Maximal time a location waits in the buffer
+     * @param maxBufferedKeys     Number of buffered keys that triggers a flush
+     * @return The buffer, giving access to its statistics.
+     */
+    public WriteBehindBuffer enableWriteBehind(long flushIntervalMillis, int maxBufferedKeys) {
+        WriteBehindBuffer buffer = new WriteBehindBuffer(this, flushIntervalMillis, maxBufferedKeys);
+        replaceWriteBehindBuffer(buffer);
+        return buffer;
+    }
+
+    /**
+     * Disables write-behind, buffered locations are sent.
+     */
+    public void disableWriteBehind() {
+        replaceWriteBehindBuffer(null);
+    }
+
+    private void replaceWriteBehindBuffer(WriteBehindBuffer buffer) {
+        WriteBehindBuffer previous;
+        synchronized (this) {
+            previous = this.writeBehindBuffer;
+            this.writeBehindBuffer = buffer;
+        }
+        // flushed without holding the lock, the buffer locks itself before scheduling on this instance
+        if (previous != null) {
+            previous.flush();
+        }
+    }
+
+    /**
+     * @return The write-behind buffer, or null if write-behind is disabled.
+     */
+    public WriteBehindBuffer getWriteBehindBuffer() {
+        return this.writeBehindBuffer;
+    }
+
+    /**
+     * Sets the precisions of the cells every key is written to. Storing keys at coarser precisions in addition to
+     * the default precision lets queries over large areas subscribe to a few coarse cells instead of thousands of
+     * default cells, filtering the additional keys out locally. Writers and readers of the same database must use
+     * the same precisions, and keys written before the change are only stored at the former precisions.
+     *
+     * @param precisions The precisions, one of them being GeoHash.DEFAULT_PRECISION and none finer
+     */
+    public void setStoragePrecisions(int... precisions) {
+        int[] sorted = precisions.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] < 1 || (i > 0 && sorted[i] == sorted[i - 1])) {
+                throw new IllegalArgumentException("Invalid storage precisions: " + Arrays.toString(precisions));
+            }
+        }
+        if (sorted.length == 0 || sorted[sorted.length - 1] != GeoHash.DEFAULT_PRECISION) {
+            throw new IllegalArgumentException("Storage precisions must end with the default precision "
+                    + GeoHash.DEFAULT_PRECISION + ": " + Arrays.toString(precisions));
+        }
+        this.storagePrecisions = sorted;
+    }
+
+    /**
+     * @return The precisions of the cells every key is written to, ascending.
+     */
+    public int[] getStoragePrecisions() {
+        return this.storagePrecisions.clone();
+    }
+
+    /**
+     * Sets the number of cells a query subscribes to at most while a coarser storage precision is available. Queries
+     * use the finest storage precision needing at most this number of cells. A query needing more cells even at the
+     * coarsest storage precision subscribes to the cells of that precision and exceeds the target, e.g. a radius of
+     * 100 km around Paris needs 83 cells at precision 4.
+     *
+     * @param targetCellCount The number of cells
+     */
+    public void setTargetCellCount(int targetCellCount) {
+        if (targetCellCount < 1) {
+            throw new IllegalArgumentException("Target cell count must be positive: " + targetCellCount);
+        }
+        this.targetCellCount = targetCellCount;
+    }
+
+    public int getTargetCellCount() {
+        return this.targetCellCount;
+    }
+
+    /**
+     * Plans a query over the storage precisions of this instance, using the shared plan cache. When coarsening is
+     * allowed, the cell budget lowers the target cell count, so a coarser precision is chosen before the budget is
+     * exceeded. Otherwise only the default precision is planned. The plan may still exceed the budget, which is up to
+     * the caller to check.
+     */
+    QueryPlan planQuery(GeoLocation center, double radius, int cellBudget, boolean allowCoarsening) {
+        if (!allowCoarsening) {
+            return this.queryPlanCache.planAtLocation(center, radius);
+        }
+        return this.queryPlanCache.planAtLocation(center, radius, this.storagePrecisions,
+                Math.min(this.targetCellCount, cellBudget));
+    }
+
+    /**
+     * Plans a query of a bounding box like planQuery of a circle, without caching as a box is rarely planned twice.
+     */
+    QueryPlan planQuery(BoundingBox box, int cellBudget, boolean allowCoarsening) {
+        if (!allowCoarsening) {
+            return QueryPlan.inBoundingBox(box, new int[]{GeoHash.DEFAULT_PRECISION}, Integer.MAX_VALUE);
+        }
+        return QueryPlan.inBoundingBox(box, this.storagePrecisions, Math.min(this.targetCellCount, cellBudget));
+    }
+
+    CellSubscriptionMultiplexer getCellSubscriptions() {
+        return this.cellSubscriptions;
     }
 
     /**
@@ -156,31 +469,395 @@ public class GeoFire {
     }
 
     /**
-     * Adds new location with a given key.
+     * Adds new location with a given key. A key already written by this GeoFire instance is updated in place if it
+     * stays in its cell, and removed from its previous cell in the same write otherwise.
      *
      * @param key               The key to save the location for
      * @param location          The location of this key
      * @param onComplete        A listener that is called once the location was successfully saved on the server or an
-     *                          error occurred
+     *                          error occurred, including when the key is not a valid Webcom key
      */
     public void addNewLocation(final String key, final GeoLocation location, final OnComplete onComplete) {
         if (key == null) {
             throw new NullPointerException();
         }
-        GeoHash geoHash = new GeoHash(location);
-        Webcom hashRef = this.getDatabaseRefForGeoHash( geoHash.getGeoHashString());
-        Map<String, Object> updates = new HashMap<String, Object>();
-        updates.put(key, Arrays.asList(location.latitude, location.longitude));
-        try {
-            if (onComplete != null) {
-                hashRef.update(updates, onComplete);
+        if (!isValidKey(key)) {
+            rejectInvalidKey(key, onComplete);
+            return;
+        }
+        WriteBehindBuffer buffer = this.writeBehindBuffer;
+        if (buffer != null) {
+            buffer.write(key, location, null, onComplete);
+            return;
+        }
+        String cell = cellOf(location);
+        this.setLocation(key, location, cell, this.keyCellIndex.put(key, cell), onComplete);
+    }
+
+    /**
+     * Moves a key whose current cell is known to the caller, such as a GeoQuery holding the key.
+     */
+    void moveLocation(String key, GeoLocation location, String previousCell, OnComplete onComplete) {
+        if (!isValidKey(key)) {
+            rejectInvalidKey(key, onComplete);
+            return;
+        }
+        WriteBehindBuffer buffer = this.writeBehindBuffer;
+        if (buffer != null) {
+            buffer.write(key, location, previousCell, onComplete);
+            return;
+        }
+        String cell = cellOf(location);
+        this.keyCellIndex.put(key, cell);
+        this.setLocation(key, location, cell, previousCell, onComplete);
+    }
+
+    private void setLocation(final String key, GeoLocation location, final String cell, final String previousCell,
+                             final OnComplete onComplete) {
+        if (this.storagePrecisions.length == 1 && (previousCell == null || previousCell.equals(cell))) {
+            this.backend.setLocation(cell, key, location, onComplete);
+            return;
+        }
+        // the key is stored at several precisions or crosses cells, write all cells at once
+        Map<String, Map<String, GeoLocation>> updates = new HashMap<String, Map<String, GeoLocation>>();
+        this.putLocation(updates, key, location, cell, previousCell);
+        Map<String, String[]> crossings = previousCell == null || previousCell.equals(cell)
+                ? Collections.<String, String[]>emptyMap()
+                : Collections.singletonMap(key, new String[]{cell, previousCell});
+        this.backend.updateCells(updates,
+                restoringKeyCellIndex(crossings, Collections.<String, String>emptyMap(), onComplete));
+    }
+
+    /**
+     * Adds or moves several keys with a single write per batch. Keys are grouped by cell before they are sent.
+     *
+     * @param locations            The keys to save with their locations
+     * @param completionListener   A listener that is called once all keys were saved on the server or failed, may be
+     *                             null
+     */
+    public void addNewLocations(Map<String, GeoLocation> locations, BatchCompletionListener completionListener) {
+        Map<String, WebcomError> failures = new HashMap<String, WebcomError>();
+        WriteBehindBuffer buffer = this.writeBehindBuffer;
+        if (buffer != null) {
+            this.addNewLocations(buffer, locations, failures, completionListener);
+            return;
+        }
+        Map<String, Map<String, GeoLocation>> updates = new HashMap<String, Map<String, GeoLocation>>();
+        // keys crossing cells, mapped to their new and previous cell
+        Map<String, String[]> crossings = new HashMap<String, String[]>();
+        for (Map.Entry<String, GeoLocation> entry : locations.entrySet()) {
+            String key = entry.getKey();
+            if (!isValidKey(key)) {
+                failures.put(key, invalidKeyError(key));
+            } else if (entry.getValue() == null) {
+                throw new NullPointerException("Location of key " + key + " is null");
             } else {
-                hashRef.update(updates );
+                this.putMove(updates, crossings, key, entry.getValue(), null);
             }
-        } catch (WebcomException e) {
-            e.printStackTrace();
-            Log.e("OrangeFire","OrangeFire:addNewLocation Failed to push values to database.");
         }
+        this.updateCells(updates, failures, completionListener, crossings, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Writes several valid keys with a single write, such as the locations buffered for write-behind. The key cell
+     * index is restored if the write fails.
+     *
+     * @param previousCells Cells of default precision of keys known to the caller, used for the keys missing from the
+     *                      key cell index
+     * @param onComplete    Called once all keys were saved or the write failed, may be null
+     */
+    void addNewLocations(Map<String, GeoLocation> locations, Map<String, String> previousCells, OnComplete onComplete) {
+        Map<String, Map<String, GeoLocation>> updates = new HashMap<String, Map<String, GeoLocation>>();
+        Map<String, String[]> crossings = new HashMap<String, String[]>();
+        for (Map.Entry<String, GeoLocation> entry : locations.entrySet()) {
+            this.putMove(updates, crossings, entry.getKey(), entry.getValue(), previousCells.get(entry.getKey()));
+        }
+        this.backend.updateCells(updates,
+                restoringKeyCellIndex(crossings, Collections.<String, String>emptyMap(), onComplete));
+    }
+
+    /**
+     * Adds the writes of a key to a batch and moves the key in the key cell index, recording the key if it crosses
+     * cells.
+     *
+     * @param knownPreviousCell Cell of the key known to the caller, used if the key cell index does not know the key
+     */
+    private void putMove(Map<String, Map<String, GeoLocation>> updates, Map<String, String[]> crossings, String key,
+                         GeoLocation location, String knownPreviousCell) {
+        String cell = cellOf(location);
+        String previousCell = this.keyCellIndex.put(key, cell);
+        if (previousCell == null) {
+            previousCell = knownPreviousCell;
+        }
+        if (previousCell != null && !previousCell.equals(cell)) {
+            crossings.put(key, new String[]{cell, previousCell});
+        }
+        this.putLocation(updates, key, location, cell, previousCell);
+    }
+
+    private void addNewLocations(WriteBehindBuffer buffer, Map<String, GeoLocation> locations,
+                                 Map<String, WebcomError> failures, BatchCompletionListener completionListener) {
+        Map<String, GeoLocation> validLocations = new HashMap<String, GeoLocation>();
+        for (Map.Entry<String, GeoLocation> entry : locations.entrySet()) {
+            String key = entry.getKey();
+            if (!isValidKey(key)) {
+                failures.put(key, invalidKeyError(key));
+            } else if (entry.getValue() == null) {
+                throw new NullPointerException("Location of key " + key + " is null");
+            } else {
+                validLocations.put(key, entry.getValue());
+            }
+        }
+        if (validLocations.isEmpty()) {
+            if (completionListener != null) {
+                completionListener.onComplete(failures);
+            }
+            return;
+        }
+        BatchCompletion completion = completionListener == null
+                ? null : new BatchCompletion(completionListener, failures, validLocations.size());
+        for (Map.Entry<String, GeoLocation> entry : validLocations.entrySet()) {
+            String key = entry.getKey();
+            buffer.write(key, entry.getValue(), null, completion == null ? null : completion.forKey(key));
+        }
+    }
+
+    //  A buffered location must not be written after the removal of its key
+    private void discardBufferedWrite(String key) {
+        WriteBehindBuffer buffer = this.writeBehindBuffer;
+        if (buffer != null) {
+            buffer.discard(key);
+        }
+    }
+
+    /**
+     * Removes several keys with a single write per batch.
+     *
+     * @param geohashesByKey       The keys to remove, each mapped to the hash of its current position
+     * @param completionListener   A listener that is called once all keys were removed from the server or failed,
+     *                             may be null
+     */
+    public void removeLocations(Map<String, String> geohashesByKey, BatchCompletionListener completionListener) {
+        Map<String, WebcomError> failures = new HashMap<String, WebcomError>();
+        Map<String, Map<String, GeoLocation>> updates = new HashMap<String, Map<String, GeoLocation>>();
+        // keys removed from the index, mapped to their cell
+        Map<String, String> removedCells = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : geohashesByKey.entrySet()) {
+            String key = entry.getKey();
+            if (!isValidKey(key)) {
+                failures.put(key, invalidKeyError(key));
+            } else if (entry.getValue() == null) {
+                throw new NullPointerException("Geohash of key " + key + " is null");
+            } else {
+                this.discardBufferedWrite(key);
+                String cell = this.keyCellIndex.remove(key);
+                if (cell != null) {
+                    removedCells.put(key, cell);
+                }
+                this.putRemoval(updates, key, entry.getValue());
+            }
+        }
+        this.updateCells(updates, failures, completionListener, Collections.<String, String[]>emptyMap(),
+                removedCells);
+    }
+
+    /**
+     * Removes several keys written by this GeoFire instance with a single write per batch. Keys missing from the key
+     * cell index are reported as failed.
+     *
+     * @param keys                 The keys to remove
+     * @param completionListener   A listener that is called once all keys were removed from the server or failed,
+     *                             may be null
+     */
+    public void removeLocations(Collection<String> keys, BatchCompletionListener completionListener) {
+        Map<String, WebcomError> failures = new HashMap<String, WebcomError>();
+        Map<String, Map<String, GeoLocation>> updates = new HashMap<String, Map<String, GeoLocation>>();
+        Map<String, String> removedCells = new HashMap<String, String>();
+        for (String key : keys) {
+            if (isValidKey(key)) {
+                this.discardBufferedWrite(key);
+            }
+            String cell = isValidKey(key) ? this.keyCellIndex.remove(key) : null;
+            if (!isValidKey(key)) {
+                failures.put(key, invalidKeyError(key));
+            } else if (cell == null) {
+                failures.put(key, unknownCellError(key));
+            } else {
+                removedCells.put(key, cell);
+                this.putRemoval(updates, key, cell);
+            }
+        }
+        this.updateCells(updates, failures, completionListener, Collections.<String, String[]>emptyMap(),
+                removedCells);
+    }
+
+    /**
+     * Sends a batch, and restores the key cell index on failure.
+     *
+     * @param crossings    Keys moved to another cell by the batch, mapped to their new and previous cell
+     * @param removedCells Keys removed by the batch, mapped to their cell
+     */
+    private void updateCells(final Map<String, Map<String, GeoLocation>> updates,
+                             final Map<String, WebcomError> failures,
+                             final BatchCompletionListener completionListener,
+                             Map<String, String[]> crossings,
+                             Map<String, String> removedCells) {
+        if (updates.isEmpty()) {
+            if (completionListener != null) {
+                completionListener.onComplete(failures);
+            }
+            return;
+        }
+        this.backend.updateCells(updates, restoringKeyCellIndex(crossings, removedCells, new OnComplete() {
+            @Override
+            public void onComplete() {
+                if (completionListener != null) {
+                    completionListener.onComplete(failures);
+                }
+            }
+
+            @Override
+            public void onError(WebcomError webcomError) {
+                if (completionListener == null) {
+                    return;
+                }
+                // the batch is written at once, so every key of it failed
+                for (Map<String, GeoLocation> cellUpdates : updates.values()) {
+                    for (String key : cellUpdates.keySet()) {
+                        failures.put(key, webcomError);
+                    }
+                }
+                completionListener.onComplete(failures);
+            }
+        }));
+    }
+
+    /**
+     * Wraps the completion listener of a write moving or removing keys, so a failure restores the key cell index
+     * before the listener is called, since the keys are then still in their previous cells.
+     *
+     * @param crossings    Keys moved to another cell by the write, mapped to their new and previous cell
+     * @param removedCells Keys removed by the write, mapped to their cell
+     * @param onComplete   The listener to wrap, may be null
+     */
+    private OnComplete restoringKeyCellIndex(final Map<String, String[]> crossings,
+                                             final Map<String, String> removedCells, final OnComplete onComplete) {
+        return new OnComplete() {
+            @Override
+            public void onComplete() {
+                if (onComplete != null) {
+                    onComplete.onComplete();
+                }
+            }
+
+            @Override
+            public void onError(WebcomError webcomError) {
+                for (Map.Entry<String, String[]> crossing : crossings.entrySet()) {
+                    keyCellIndex.replace(crossing.getKey(), crossing.getValue()[0], crossing.getValue()[1]);
+                }
+                for (Map.Entry<String, String> removal : removedCells.entrySet()) {
+                    keyCellIndex.restore(removal.getKey(), removal.getValue());
+                }
+                if (onComplete != null) {
+                    onComplete.onError(webcomError);
+                }
+            }
+        };
+    }
+
+    /**
+     * Adds the writes storing a key in its cell at every storage precision, and removing it from the cells of its
+     * previous position it leaves.
+     *
+     * @param cell         Cell of default precision of the new location
+     * @param previousCell Cell of default precision of the previous location, null if unknown
+     */
+    private void putLocation(Map<String, Map<String, GeoLocation>> updates, String key, GeoLocation location,
+                             String cell, String previousCell) {
+        for (int precision : this.storagePrecisions) {
+            String levelCell = cell.substring(0, precision);
+            if (previousCell != null) {
+                String previousLevelCell = previousCell.substring(0, Math.min(precision, previousCell.length()));
+                if (!previousLevelCell.equals(levelCell)) {
+                    cellUpdates(updates, previousLevelCell).put(key, null);
+                }
+            }
+            cellUpdates(updates, levelCell).put(key, location);
+        }
+    }
+
+    /**
+     * Adds the writes removing a key from its cell at every storage precision.
+     *
+     * @param cell Cell of default precision of the key
+     */
+    private void putRemoval(Map<String, Map<String, GeoLocation>> updates, String key, String cell) {
+        for (int precision : this.storagePrecisions) {
+            cellUpdates(updates, cell.substring(0, Math.min(precision, cell.length()))).put(key, null);
+        }
+    }
+
+    /**
+     * Removes a key from its cell, and puts the cell it had in the key cell index back if the removal fails.
+     *
+     * @param indexedCell Cell of the key removed from the key cell index, null if none
+     */
+    private void removeFromCell(String key, String cell, String indexedCell, OnComplete completionListener) {
+        OnComplete onComplete = indexedCell == null ? completionListener : restoringKeyCellIndex(
+                Collections.<String, String[]>emptyMap(), Collections.singletonMap(key, indexedCell),
+                completionListener);
+        if (this.storagePrecisions.length == 1) {
+            this.backend.removeLocation(cell, key, onComplete);
+            return;
+        }
+        Map<String, Map<String, GeoLocation>> updates = new HashMap<String, Map<String, GeoLocation>>();
+        this.putRemoval(updates, key, cell);
+        this.backend.updateCells(updates, onComplete);
+    }
+
+    static Map<String, GeoLocation> cellUpdates(Map<String, Map<String, GeoLocation>> updates, String cell) {
+        Map<String, GeoLocation> cellUpdates = updates.get(cell);
+        if (cellUpdates == null) {
+            cellUpdates = new HashMap<String, GeoLocation>();
+            updates.put(cell, cellUpdates);
+        }
+        return cellUpdates;
+    }
+
+    static String cellOf(GeoLocation location) {
+        int precision = GeoHash.DEFAULT_PRECISION;
+        return Base32Utils.bitsToBase32(GeoHash.encode(location.latitude, location.longitude, precision), precision);
+    }
+
+    //  Keys become path segments of batch writes, where these characters would address another node
+    private static boolean isValidKey(String key) {
+        if (key == null || key.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '/' || c == '.' || c == '#' || c == '$' || c == '[' || c == ']' || c < 0x20 || c == 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static WebcomError invalidKeyError(String key) {
+        return new WebcomError("InvalidKey", "Key " + key + " is not a valid Webcom key");
+    }
+
+    //  An invalid key is never written, it would join the batch writes of other keys
+    private static void rejectInvalidKey(String key, OnComplete onComplete) {
+        if (onComplete != null) {
+            onComplete.onError(invalidKeyError(key));
+        } else {
+            Log.e("OrangeFire","OrangeFire:addNewLocation Key " + key + " is not a valid Webcom key.");
+        }
+    }
+
+    private static WebcomError unknownCellError(String key) {
+        return new WebcomError("RemoveError", "Cell of key " + key + " is unknown");
     }
 
 
@@ -190,7 +867,7 @@ public class GeoFire {
      * @param GeohashString hash of position for this key
      */
     public void removeLocation(String key, String GeohashString) {
-        this.removeLocation(key, null);
+        this.removeLocation(key, GeohashString, null);
     }
 
     /** Removes selected key from database in certain GeoHash area
@@ -204,16 +881,36 @@ public class GeoFire {
         if (key == null || GeohashString == null) {
             throw new NullPointerException();
         }
-        Webcom keyRef = this.getDatabaseRefForGeoHash(GeohashString);
-        try {
-            if (completionListener != null) {
-                keyRef.child(key).remove( completionListener);
-            } else {
-                keyRef.child(key).remove( );
-            }
-        } catch (WebcomException e) {
-            e.printStackTrace();
-            Log.e("OrangeFire","OrangeFire:removeLocation Failed to remove value from database.");
+        this.discardBufferedWrite(key);
+        this.removeFromCell(key, GeohashString, this.keyCellIndex.remove(key), completionListener);
+    }
+
+    /** Removes a key written by this GeoFire instance, looking its cell up in the key cell index.
+     *
+     * @param key key The key to remove from this GeoFire
+     */
+    public void removeLocation(String key) {
+        this.removeLocation(key, (OnComplete) null);
+    }
+
+    /** Removes a key written by this GeoFire instance, looking its cell up in the key cell index.
+     *
+     * @param key key The key to remove from this GeoFire
+     * @param completionListener A completion listener that is called once the location is successfully removed
+     *                           from the server or an error occurred, including when the cell of the key is unknown
+     */
+    public void removeLocation(String key, OnComplete completionListener) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        this.discardBufferedWrite(key);
+        String cell = this.keyCellIndex.remove(key);
+        if (cell != null) {
+            this.removeFromCell(key, cell, cell, completionListener);
+        } else if (completionListener != null) {
+            completionListener.onError(unknownCellError(key));
+        } else {
+            Log.e("OrangeFire","OrangeFire:removeLocation Cell of key " + key + " is unknown.");
         }
     }
 
@@ -228,7 +925,143 @@ public class GeoFire {
         return new GeoQuery(this, center, radius);
     }
 
-    void raiseEvent(Runnable r) {
-        this.eventRaiser.raiseEvent(r);
+    /**
+     * Returns a new Query object for the keys inside a bounding box, e.g. the visible region of a map. The box is
+     * covered by geohash cells and keys are tested with a comparison of their coordinates.
+     *
+     * @param southWest The south west corner of the box
+     * @param northEast The north east corner of the box, west of the south west corner if the box crosses the
+     *                  antimeridian
+     * @return The new GeoQuery object
+     */
+    public GeoQuery queryInBoundingBox(GeoLocation southWest, GeoLocation northEast) {
+        return new GeoQuery(this, GeoQuery.boundingBoxOf(southWest, northEast));
+    }
+
+    /**
+     * Finds the k keys nearest to a location, within DEFAULT_NEAREST_MAX_DISTANCE kilometers of it and reading at
+     * most DEFAULT_NEAREST_MAX_CELLS cells.
+     *
+     * @param center   The location to find the nearest keys to
+     * @param k        The number of keys to find
+     * @param callback The callback receiving the keys sorted by distance
+     */
+    public void queryNearest(GeoLocation center, int k, NearestKeysCallback callback) {
+        queryNearest(center, k, DEFAULT_NEAREST_MAX_DISTANCE, DEFAULT_NEAREST_MAX_CELLS, callback);
+    }
+
+    /**
+     * Finds the k keys nearest to a location, reading at most DEFAULT_NEAREST_MAX_CELLS cells.
+     *
+     * @param center      The location to find the nearest keys to
+     * @param k           The number of keys to find
+     * @param maxDistance The distance beyond which keys are not looked for, in kilometers
+     * @param callback    The callback receiving the keys sorted by distance
+     */
+    public void queryNearest(GeoLocation center, int k, double maxDistance, NearestKeysCallback callback) {
+        queryNearest(center, k, maxDistance, DEFAULT_NEAREST_MAX_CELLS, callback);
+    }
+
+    /**
+     * Finds the k keys nearest to a location. Cells are read in rings of increasing distance around the cell of the
+     * location, until no key of the next ring can be nearer than the k-th nearest key found or than the maximal
+     * distance. The callback is called once, with fewer than k keys if there are not as many within the maximal
+     * distance, or with a "CellBudgetExceeded" error if the next ring would take the number of cells read beyond
+     * the maximal number of cells. A query not done after the nearest keys timeout fails with a "Timeout" error.
+     * The callback is called on the thread of the events of this GeoFire instance.
+     *
+     * @param center      The location to find the nearest keys to
+     * @param k           The number of keys to find
+     * @param maxDistance The distance beyond which keys are not looked for, in kilometers
+     * @param maxCells    The number of cells read at most
+     * @param callback    The callback receiving the keys sorted by distance
+     */
+    public void queryNearest(GeoLocation center, int k, double maxDistance, int maxCells,
+                             NearestKeysCallback callback) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Number of nearest keys must be at least 1: " + k);
+        }
+        if (maxDistance <= 0) {
+            throw new IllegalArgumentException("Maximal distance must be positive: " + maxDistance);
+        }
+        if (maxCells < 1) {
+            throw new IllegalArgumentException("Maximal number of cells must be at least 1: " + maxCells);
+        }
+        new NearestQuery(this, center, k, maxDistance * 1000, maxCells, this.nearestTimeoutMillis, callback).start();
+    }
+
+    /**
+     * Sets the time after which a nearest keys query fails if it is not done, DEFAULT_NEAREST_TIMEOUT_MILLIS by
+     * default.
+     *
+     * @param timeoutMillis The timeout of the queries started afterwards, in milliseconds
+     */
+    public void setNearestTimeout(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive: " + timeoutMillis);
+        }
+        this.nearestTimeoutMillis = timeoutMillis;
+    }
+
+    public long getNearestTimeout() {
+        return this.nearestTimeoutMillis;
+    }
+
+    synchronized ScheduledFuture<?> schedule(Runnable r, long delayMillis) {
+        if (this.scheduler == null) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "GeoFire-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.scheduler.schedule(r, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the threads owned by this GeoFire instance: the scheduler of coalesced re-planning and the event thread
+     * used off Android. An executor passed by the caller is left running. Buffered locations are sent, and a key cell
+     * index and a cell cache persisted in a file are saved. Queries must not be used afterwards.
+     */
+    public void shutdown() {
+        disableWriteBehind();
+        synchronized (this) {
+            if (this.scheduler != null) {
+                this.scheduler.shutdownNow();
+            }
+            if (this.eventRaiser instanceof ThreadEventRaiser) {
+                ((ThreadEventRaiser) this.eventRaiser).shutdown();
+            }
+        }
+        try {
+            this.keyCellIndex.save();
+        } catch (IOException e) {
+            e.printStackTrace();
+            Log.e("OrangeFire","OrangeFire:shutdown Failed to save the key cell index.");
+        }
+        CellCache cellCache = this.cellCache;
+        if (cellCache != null) {
+            this.cellSubscriptions.saveToCache();
+            try {
+                cellCache.save();
+            } catch (IOException e) {
+                e.printStackTrace();
+                Log.e("OrangeFire","OrangeFire:shutdown Failed to save the cell cache.");
+            }
+        }
+    }
+
+    /**
+     * @return The raiser for the events of one listener, delivering them one at a time and in order.
+     */
+    EventRaiser newEventRaiser() {
+        if (this.eventExecutor != null) {
+            return new SerialEventRaiser(this.eventExecutor);
+        }
+        // the main thread and the event thread are serial already
+        return this.eventRaiser;
     }
 }
@@ -1,71 +1,124 @@
 package com.olab.orangefire_lib;
 
-import android.support.annotation.Nullable;
-
+import com.olab.orangefire_lib.core.BoundingBox;
 import com.olab.orangefire_lib.core.GeoHash;
-import com.olab.orangefire_lib.core.GeoHashQuery;
-import com.olab.orangefire_lib.orangefire.Utility;
+import com.olab.orangefire_lib.core.QueryPlan;
+import com.olab.orangefire_lib.util.Base32Utils;
+import com.olab.orangefire_lib.util.CircleFilter;
 import com.olab.orangefire_lib.util.GeoUtils;
-import com.olab.orangefire_lib.orangefire.ChildEventListener;
 
-import com.orange.webcom.sdk.DataSnapshot;
 import com.orange.webcom.sdk.OnComplete;
-import com.orange.webcom.sdk.OnQuery;
-import com.orange.webcom.sdk.Query;
 import com.orange.webcom.sdk.WebcomError;
-import com.orange.webcom.sdk.WebcomException;
 
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
- * A GeoQuery object can be used for geo queries in a given circle. The GeoQuery class is thread safe.
+ * A GeoQuery object can be used for geo queries in a given circle or bounding box. The GeoQuery class is thread safe.
  */
 public class GeoQuery {
 
-    private static class LocationInfo {
-        final GeoLocation location;
-        final boolean inGeoQuery;
-        final GeoHash geoHash;
+    private static class ListenerRegistration {
+        final GeoQueryBatchEventListener listener;
+        final EventRaiser eventRaiser;
 
-        public LocationInfo(GeoLocation location, boolean inGeoQuery) {
-            this.location = location;
-            this.inGeoQuery = inGeoQuery;
-            this.geoHash = new GeoHash(location);
+        ListenerRegistration(GeoQueryBatchEventListener listener, EventRaiser eventRaiser) {
+            this.listener = listener;
+            this.eventRaiser = eventRaiser;
+        }
+
+        void raise(final GeoQueryEventBatch batch) {
+            this.eventRaiser.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    batch.deliverTo(listener);
+                }
+            });
         }
     }
 
-    private final ChildEventListener childEventLister = new ChildEventListener() {
+    private final CellSubscriptionMultiplexer.CellListener cellListener = new CellSubscriptionMultiplexer.CellListener() {
+        @Override
+        public void onChildAdded(String cell, String key, GeoLocation location) {
+            synchronized (GeoQuery.this) {
+                GeoQuery.this.childAdded(key, location);
+                GeoQuery.this.flushEvents();
+            }
+        }
+
+        @Override
+        public void onChildChanged(String cell, String key, GeoLocation location) {
+            synchronized (GeoQuery.this) {
+                GeoQuery.this.childChanged(key, location);
+                GeoQuery.this.flushEvents();
+            }
+        }
+
         @Override
-        public void onChildAdded(DataSnapshot dataSnapshot, String s) {
+        public void onChildRemoved(String cell, String key) {
             synchronized (GeoQuery.this) {
-                GeoQuery.this.childAdded(dataSnapshot);
+                GeoQuery.this.childRemoved(cell, key);
+                GeoQuery.this.flushEvents();
             }
         }
 
         @Override
-        public void onChildChanged(DataSnapshot dataSnapshot, String s) {
+        public void onCellReady(String cell) {
             synchronized (GeoQuery.this) {
-                GeoQuery.this.childChanged(dataSnapshot);
+                if (GeoQuery.this.outstandingCells.remove(cell)) {
+                    GeoQuery.this.checkAndFireReady();
+                    GeoQuery.this.flushEvents();
+                }
             }
         }
 
         @Override
-        public void onChildRemoved(DataSnapshot dataSnapshot) {
+        public void onCellError(String cell, final WebcomError webcomError) {
             synchronized (GeoQuery.this) {
-                GeoQuery.this.childRemoved(dataSnapshot);
+                GeoQuery.this.pendingEvents.error(webcomError);
+                GeoQuery.this.flushEvents();
             }
         }
 
     };
 
     private final GeoFire geoFire;
-    private final Set<GeoQueryEventListener> eventListeners = new HashSet<GeoQueryEventListener>();
-    private final Map<GeoHashQuery, Query> webcomQueries = new HashMap<GeoHashQuery, Query>();
-    private final Set<GeoHashQuery> outstandingQueries = new HashSet<GeoHashQuery>();
-    private final Map<String, LocationInfo> locationInfos = new HashMap<String, LocationInfo>();
+    // listeners as added by the caller, single key listeners mapped to their adapter
+    private final Map<Object, ListenerRegistration> eventListeners = new LinkedHashMap<Object, ListenerRegistration>();
+    // events collected since the last dispatch
+    private GeoQueryEventBatch pendingEvents = new GeoQueryEventBatch();
+    // set while a plan is applied, cells replayed meanwhile go into the batch of the plan diff
+    private boolean applyingPlan;
+    // cells of the current plan this query is attached to
+    private final Set<String> attachedCells = new HashSet<String>();
+    private final Set<String> outstandingCells = new HashSet<String>();
+    // subscribed cells as sorted geohash bits, all of the precision of the plan
+    private long[] subscribedCells = new long[0];
+    private int subscribedPrecision = GeoHash.DEFAULT_PRECISION;
+    private final LocationStore locations = new LocationStore();
     private GeoLocation center;
     private double radius;
-    private Set<GeoHashQuery> queries;
+    // search area of a bounding box query, center and radius then describe the circle around the box
+    private BoundingBox boundingBox;
+    // membership test for the current center and radius
+    private CircleFilter circleFilter;
+    // scratch buffer of the batch membership test of known keys
+    private boolean[] membership = new boolean[0];
+    private QueryPlan plan;
+    // plans needing more cells are rejected instead of subscribed
+    private int cellBudget = Integer.MAX_VALUE;
+    private boolean coarseningAllowed = true;
+    // set while the current plan is rejected, reported instead of the ready event
+    private WebcomError planError;
+    // coalesced re-planning, disabled while the quiet period is zero
+    private long replanQuietPeriodMillis;
+    private long replanMaxDelayMillis;
+    private long firstPendingChangeMillis;
+    private int criteriaGeneration;
+    private ScheduledFuture<?> pendingReplan;
+    // identifies the latest scheduled re-planning
+    private int replanSequence;
 
     /**
      * Creates a new GeoQuery object centered at the given location and with the given radius.
@@ -79,71 +132,102 @@ public class GeoQuery {
         this.center = center;
         // convert from kilometers to meters
         this.radius = radius * 1000;
+        this.circleFilter = new CircleFilter(center.latitude, center.longitude, this.radius);
     }
 
-    private boolean locationIsInQuery(GeoLocation location) {
-        return GeoUtils.distance(location, center) <= this.radius;
+    /**
+     * Creates a new GeoQuery object for the keys inside the given bounding box.
+     *
+     * @param geoFire     The GeoFire object this GeoQuery uses
+     * @param boundingBox The search area
+     */
+    GeoQuery(GeoFire geoFire, BoundingBox boundingBox) {
+        this.geoFire = geoFire;
+        this.setBoundingBoxCriteria(boundingBox);
+        this.circleFilter = new CircleFilter(this.center.latitude, this.center.longitude, this.radius);
     }
 
-    private void updateLocationInfo(final String key, final GeoLocation location) {
-        LocationInfo oldInfo = this.locationInfos.get(key);
-        boolean isNew = (oldInfo == null);
-        boolean changedLocation = (oldInfo != null && !oldInfo.location.equals(location));
-        boolean wasInQuery = (oldInfo != null && oldInfo.inGeoQuery);
+    static BoundingBox boundingBoxOf(GeoLocation southWest, GeoLocation northEast) {
+        if (southWest.latitude > northEast.latitude) {
+            throw new IllegalArgumentException("South west corner " + southWest + " is north of north east corner "
+                    + northEast);
+        }
+        return new BoundingBox(southWest.latitude, southWest.longitude, northEast.latitude, northEast.longitude);
+    }
 
-        boolean isInQuery = this.locationIsInQuery(location);
-        if ((isNew || !wasInQuery) && isInQuery) {
-            for (final GeoQueryEventListener listener : this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onKeyEntered(key, location);
-                    }
-                });
-            }
-        } else if (!isNew && changedLocation && isInQuery) {
-            for (final GeoQueryEventListener listener : this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onKeyMoved(key, location);
-                    }
-                });
-            }
-        } else if (wasInQuery && !isInQuery) {
-            for (final GeoQueryEventListener listener : this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onKeyExited(key);
-                    }
-                });
+    private void setBoundingBoxCriteria(BoundingBox box) {
+        double centerLongitude = (box.minLongitude + box.maxLongitude) / 2;
+        if (box.crossesAntimeridian()) {
+            centerLongitude = GeoUtils.wrapLongitude(centerLongitude + 180);
+        }
+        GeoLocation boxCenter = new GeoLocation((box.minLatitude + box.maxLatitude) / 2, centerLongitude);
+        double cornerDistance = 0;
+        for (double latitude : new double[]{box.minLatitude, box.maxLatitude}) {
+            for (double longitude : new double[]{box.minLongitude, box.maxLongitude}) {
+                cornerDistance = Math.max(cornerDistance,
+                        GeoUtils.distance(boxCenter.latitude, boxCenter.longitude, latitude, longitude));
             }
         }
-        LocationInfo newInfo = new LocationInfo(location, this.locationIsInQuery(location));
-        this.locationInfos.put(key, newInfo);
+        this.boundingBox = box;
+        this.center = boxCenter;
+        this.radius = cornerDistance;
     }
 
-    private boolean geoHashQueriesContainGeoHash(GeoHash geoHash) {
-        if (this.queries == null) {
-            return false;
+    private boolean locationIsInQuery(double latitude, double longitude) {
+        if (this.boundingBox != null) {
+            return this.boundingBox.contains(latitude, longitude);
         }
-        for (GeoHashQuery query : this.queries) {
-            if (query.containsGeoHash(geoHash)) {
-                return true;
-            }
+        return this.circleFilter.contains(latitude, longitude);
+    }
+
+    private void updateLocationInfo(final String key, final GeoLocation location) {
+        int id = this.locations.indexOf(key);
+        boolean isNew = (id < 0);
+        boolean changedLocation = (!isNew
+                && (Double.compare(this.locations.getLatitude(id), location.latitude) != 0
+                || Double.compare(this.locations.getLongitude(id), location.longitude) != 0));
+        boolean wasInQuery = (!isNew && this.locations.isInQuery(id));
+
+        boolean isInQuery = this.locationIsInQuery(location.latitude, location.longitude);
+        if ((isNew || !wasInQuery) && isInQuery) {
+            this.pendingEvents.keyEntered(key, location);
+        } else if (!isNew && changedLocation && isInQuery) {
+            this.pendingEvents.keyMoved(key, location);
+        } else if (wasInQuery && !isInQuery) {
+            this.pendingEvents.keyExited(key);
         }
-        return false;
+        if (isNew) {
+            id = this.locations.add(key, location.latitude, location.longitude);
+        } else if (changedLocation) {
+            this.locations.setLocation(id, location.latitude, location.longitude);
+        }
+        this.locations.setInQuery(id, isInQuery);
+    }
+
+    private boolean isSubscribed(long hash) {
+        return Arrays.binarySearch(this.subscribedCells, hash >>> cellShift(this.subscribedPrecision)) >= 0;
+    }
+
+    private String cellOf(int id, int precision) {
+        return Base32Utils.bitsToBase32(this.locations.getHash(id) >>> cellShift(precision), precision);
+    }
+
+    //  Shift from a geohash of maximal precision to the geohash of its cell
+    private static int cellShift(int precision) {
+        return (GeoHash.MAX_PRECISION - precision) * Base32Utils.BITS_PER_BASE32_CHAR;
     }
 
     private void reset() {
-        for (Map.Entry<GeoHashQuery, Query> entry : this.webcomQueries.entrySet()) {
-            removeChildEventListener(entry.getValue());
+        cancelPendingReplan();
+        for (String cell : this.attachedCells) {
+            removeChildEventListener(cell);
         }
-        this.outstandingQueries.clear();
-        this.webcomQueries.clear();
-        this.queries = null;
-        this.locationInfos.clear();
+        this.outstandingCells.clear();
+        this.attachedCells.clear();
+        this.plan = null;
+        this.planError = null;
+        this.subscribedCells = new long[0];
+        this.locations.clear();
     }
 
     private boolean hasListeners() {
@@ -151,153 +235,159 @@ public class GeoQuery {
     }
 
     private boolean canFireReady() {
-        return this.outstandingQueries.isEmpty();
+        return this.outstandingCells.isEmpty();
     }
 
     private void checkAndFireReady() {
         if (canFireReady()) {
-            for (final GeoQueryEventListener listener : this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onGeoQueryReady();
-                    }
-                });
-            }
+            this.pendingEvents.ready();
         }
     }
 
-    private void addValueToReadyListener(final Query webcom, final GeoHashQuery query) {
-        Utility.AddListenerForSingleValueEvent(webcom, new Utility.ValueEventListener() {
+    //  Hands the collected events to every listener, one dispatch per listener
+    private void flushEvents() {
+        if (this.applyingPlan || this.pendingEvents.isEmpty()) {
+            return;
+        }
+        final GeoQueryEventBatch batch = this.pendingEvents;
+        this.pendingEvents = new GeoQueryEventBatch();
+        for (ListenerRegistration registration : this.eventListeners.values()) {
+            registration.raise(batch);
+        }
+    }
 
-            @Override
-            public void onDataChange(DataSnapshot dataSnapshot) {
-                synchronized (GeoQuery.this) {
-                    GeoQuery.this.outstandingQueries.remove(query);
-                    GeoQuery.this.checkAndFireReady();
-                }
-            }
+    private QueryPlan planQuery() {
+        return planQuery(this.center, this.radius, this.boundingBox, this.cellBudget, this.coarseningAllowed);
+    }
 
-            @Override
-            public void onCancelled(final WebcomError webcomError) {
-                synchronized (GeoQuery.this) {
-                    for (final GeoQueryEventListener listener : GeoQuery.this.eventListeners) {
-                        GeoQuery.this.geoFire.raiseEvent(new Runnable() {
-                            @Override
-                            public void run() {
-                                listener.onGeoQueryError(webcomError);
-                            }
-                        });
-                    }
-                }
-            }
-        });
+    private QueryPlan planQuery(GeoLocation center, double radius, BoundingBox boundingBox, int cellBudget,
+                                boolean allowCoarsening) {
+        if (boundingBox != null) {
+            return this.geoFire.planQuery(boundingBox, cellBudget, allowCoarsening);
+        }
+        return this.geoFire.planQuery(center, radius, cellBudget, allowCoarsening);
     }
 
     private void setupQueries() {
-        Set<GeoHashQuery> oldQueries = (this.queries == null) ? new HashSet<GeoHashQuery>() : this.queries;
-        Set<GeoHashQuery> newQueries = GeoHashQuery.queriesAtLocation(center, radius);
-        this.queries = newQueries;
-
-        for (GeoHashQuery query : oldQueries) {
-            if (!newQueries.contains(query)) {
-
-                Set<String> hashSet;
-                try {
-                    hashSet = query.GetGeohashSet();
-                    for ( String hashElement: hashSet ) {
-                        Query webcomQuery = geoFire.getDatabaseRefForGeoHash(hashElement);
-                        removeChildEventListener(webcomQuery);
-
-                        webcomQueries.remove(query);
-                        outstandingQueries.remove(query);
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+        setupQueries(planQuery());
+    }
 
+    private void setupQueries(QueryPlan newPlan) {
+        if (newPlan.getCellCount() > this.cellBudget) {
+            rejectPlan(newPlan);
+            return;
+        }
+        this.plan = newPlan;
+        this.planError = null;
+
+        // diff on the flat cell set, so cells kept by the new plan stay subscribed whatever range covers them
+        Set<String> newCells = newPlan.getCells();
+        for (String cell : this.attachedCells) {
+            if (!newCells.contains(cell)) {
+                removeChildEventListener(cell);
+                this.outstandingCells.remove(cell);
             }
         }
-
-        for (final GeoHashQuery query : newQueries) {
-            if (!oldQueries.contains(query)) {
-                outstandingQueries.add(query);
-                Set<String> hashSet;
-                try {
-                    hashSet = query.GetGeohashSet();
-                    for ( String hashElement: hashSet ) {
-
-                        Query webcomQuery = geoFire.getDatabaseRefForGeoHash(hashElement);
-                        addChildEventListener(webcomQuery);
-                        addValueToReadyListener(webcomQuery, query);
-                        webcomQueries.put(query, webcomQuery);
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-
+        List<String> addedCells = new ArrayList<String>();
+        for (String cell : newCells) {
+            if (!this.attachedCells.contains(cell)) {
+                addedCells.add(cell);
             }
         }
-        for (Map.Entry<String, LocationInfo> info : this.locationInfos.entrySet()) {
-            LocationInfo oldLocationInfo = info.getValue();
-            this.updateLocationInfo(info.getKey(), oldLocationInfo.location);
+        this.attachedCells.clear();
+        this.attachedCells.addAll(newCells);
+        long[] cells = new long[newCells.size()];
+        int cellCount = 0;
+        for (String cell : newCells) {
+            cells[cellCount++] = Base32Utils.base32ToBits(cell);
         }
-        // remove locations that are not part of the geo query anymore
-        Iterator<Map.Entry<String, LocationInfo>> it = this.locationInfos.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, LocationInfo> entry = it.next();
-            if (!this.geoHashQueriesContainGeoHash(entry.getValue().geoHash)) {
-                it.remove();
+        Arrays.sort(cells);
+        this.subscribedCells = cells;
+        this.subscribedPrecision = newPlan.getPrecision();
+        // cells shared with other queries may report ready while attaching, so mark them all outstanding first
+        this.outstandingCells.addAll(addedCells);
+        this.applyingPlan = true;
+        try {
+            for (String cell : addedCells) {
+                addChildEventListener(cell);
             }
+        } finally {
+            this.applyingPlan = false;
         }
-        checkAndFireReady();
-    }
 
-    private void childAdded(DataSnapshot dataSnapshot) {
-        //  add new listner for this key in geohash
-        GeoLocation location = GeoFire.getLocationValue(dataSnapshot);
-        if (location != null) {
-            try {
-                this.updateLocationInfo(dataSnapshot.name(), location);
-            } catch (WebcomException e) {
-                e.printStackTrace();
+        // test the keys already known against the new criteria in one pass, keys of cells left are dropped
+        int idLimit = this.locations.getIdLimit();
+        if (this.membership.length < idLimit) {
+            this.membership = new boolean[this.locations.latitudes().length];
+        }
+        if (this.boundingBox != null) {
+            double[] latitudes = this.locations.latitudes();
+            double[] longitudes = this.locations.longitudes();
+            for (int id = 0; id < idLimit; id++) {
+                this.membership[id] = this.boundingBox.contains(latitudes[id], longitudes[id]);
             }
         } else {
-            // throw an error in future?
+            this.circleFilter.containsAll(this.locations.latitudes(), this.locations.longitudes(), idLimit,
+                    this.membership);
+        }
+        for (int id = this.locations.nextId(0); id >= 0; id = this.locations.nextId(id + 1)) {
+            boolean subscribed = this.isSubscribed(this.locations.getHash(id));
+            boolean wasInQuery = this.locations.isInQuery(id);
+            boolean isInQuery = subscribed && this.membership[id];
+            if (!wasInQuery && isInQuery) {
+                this.pendingEvents.keyEntered(this.locations.getKey(id), this.locations.getLocation(id));
+            } else if (wasInQuery && !isInQuery) {
+                this.pendingEvents.keyExited(this.locations.getKey(id));
+            }
+            if (subscribed) {
+                this.locations.setInQuery(id, isInQuery);
+            } else {
+                this.locations.remove(id);
+            }
         }
+        checkAndFireReady();
+        flushEvents();
     }
 
-    private void childChanged(DataSnapshot dataSnapshot) {
-        GeoLocation location = GeoFire.getLocationValue(dataSnapshot);
-        if (location != null) {
-            try {
-                this.updateLocationInfo(dataSnapshot.name(), location);
-            } catch (WebcomException e) {
-                e.printStackTrace();
+    //  Leaves every cell for a plan exceeding the cell budget, the listeners get an error instead of the ready event
+    private void rejectPlan(QueryPlan rejectedPlan) {
+        this.plan = rejectedPlan;
+        for (String cell : this.attachedCells) {
+            removeChildEventListener(cell);
+        }
+        this.attachedCells.clear();
+        this.outstandingCells.clear();
+        this.subscribedCells = new long[0];
+        for (int id = this.locations.nextId(0); id >= 0; id = this.locations.nextId(id + 1)) {
+            if (this.locations.isInQuery(id)) {
+                this.pendingEvents.keyExited(this.locations.getKey(id));
             }
-        } else {
-            // throw an error in future?
         }
+        this.locations.clear();
+        this.planError = new WebcomError("CellBudgetExceeded", "Query needs " + rejectedPlan.getCellCount()
+                + " cells of precision " + rejectedPlan.getPrecision() + ", the cell budget is " + this.cellBudget);
+        this.pendingEvents.error(this.planError);
+        flushEvents();
     }
 
-    private void childRemoved(DataSnapshot dataSnapshot) {
-        final String key;
-        try {
-            key = dataSnapshot.name();
-            final LocationInfo info = this.locationInfos.get(key);
-            if (info != null && info.inGeoQuery) {
-                for (final GeoQueryEventListener listener : GeoQuery.this.eventListeners) {
-                    GeoQuery.this.geoFire.raiseEvent(new Runnable() {
-                        @Override
-                        public void run() {
-                            listener.onKeyExited(key);
-                        }
-                    });
-                }
-            }
-        } catch (WebcomException e) {
-            e.printStackTrace();
+    private void childAdded(String key, GeoLocation location) {
+        this.updateLocationInfo(key, location);
+    }
+
+    private void childChanged(String key, GeoLocation location) {
+        this.updateLocationInfo(key, location);
+    }
+
+    private void childRemoved(String cell, String key) {
+        int id = this.locations.indexOf(key);
+        // a key moving to another cell is added there before it is removed from its previous cell, see updateCells
+        if (id < 0 || !cell.equals(cellOf(id, cell.length()))) {
+            return;
+        }
+        if (this.locations.isInQuery(id)) {
+            this.pendingEvents.keyExited(key);
         }
+        this.locations.remove(id);
     }
 
     /**
@@ -307,32 +397,42 @@ public class GeoQuery {
      * @throws java.lang.IllegalArgumentException If this listener was already added
      */
     public synchronized void addGeoQueryEventListener(final GeoQueryEventListener listener) {
-        if (eventListeners.contains(listener)) {
+        addEventListener(listener, new GeoQueryEventListenerAdapter(listener));
+    }
+
+    /**
+     * Adds a new GeoQueryBatchEventListener to this GeoQuery.
+     *
+     * @param listener The listener to add
+     * @throws java.lang.IllegalArgumentException If this listener was already added
+     */
+    public synchronized void addGeoQueryEventListener(final GeoQueryBatchEventListener listener) {
+        addEventListener(listener, listener);
+    }
+
+    private void addEventListener(Object listener, final GeoQueryBatchEventListener batchListener) {
+        if (eventListeners.containsKey(listener)) {
             throw new IllegalArgumentException("Added the same listener twice to a GeoQuery!");
         }
-        eventListeners.add(listener);
-        if (this.queries == null) {
+        ListenerRegistration registration = new ListenerRegistration(batchListener, this.geoFire.newEventRaiser());
+        eventListeners.put(listener, registration);
+        if (this.plan == null) {
             this.setupQueries();
         } else {
-            for (final Map.Entry<String, LocationInfo> entry : this.locationInfos.entrySet()) {
-                final String key = entry.getKey();
-                final LocationInfo info = entry.getValue();
-                if (info.inGeoQuery) {
-                    this.geoFire.raiseEvent(new Runnable() {
-                        @Override
-                        public void run() {
-                            listener.onKeyEntered(key, info.location);
-                        }
-                    });
+            // the current state goes to the new listener only, other listeners have seen it already
+            GeoQueryEventBatch batch = new GeoQueryEventBatch();
+            for (int id = this.locations.nextId(0); id >= 0; id = this.locations.nextId(id + 1)) {
+                if (this.locations.isInQuery(id)) {
+                    batch.keyEntered(this.locations.getKey(id), this.locations.getLocation(id));
                 }
             }
-            if (this.canFireReady()) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onGeoQueryReady();
-                    }
-                });
+            if (this.planError != null) {
+                batch.error(this.planError);
+            } else if (this.canFireReady()) {
+                batch.ready();
+            }
+            if (!batch.isEmpty()) {
+                registration.raise(batch);
             }
         }
     }
@@ -344,7 +444,21 @@ public class GeoQuery {
      * @throws java.lang.IllegalArgumentException If the listener was removed already or never added
      */
     public synchronized void removeGeoQueryEventListener(GeoQueryEventListener listener) {
-        if (!eventListeners.contains(listener)) {
+        removeEventListener(listener);
+    }
+
+    /**
+     * Removes a batch event listener.
+     *
+     * @param listener The listener to remove
+     * @throws java.lang.IllegalArgumentException If the listener was removed already or never added
+     */
+    public synchronized void removeGeoQueryEventListener(GeoQueryBatchEventListener listener) {
+        removeEventListener(listener);
+    }
+
+    private void removeEventListener(Object listener) {
+        if (!eventListeners.containsKey(listener)) {
             throw new IllegalArgumentException("Trying to remove listener that was removed or not added!");
         }
         eventListeners.remove(listener);
@@ -362,7 +476,7 @@ public class GeoQuery {
     }
 
     /**
-     * Returns the current center of this query.
+     * Returns the current center of this query, the center of the box for a bounding box query.
      *
      * @return The current center
      */
@@ -371,19 +485,20 @@ public class GeoQuery {
     }
 
     /**
-     * Sets the new center of this query and triggers new events if necessary.
+     * Sets the new center of this query and triggers new events if necessary. A bounding box query becomes a radius
+     * query of its current radius.
      *
      * @param center The new center
      */
     public synchronized void setCenter(GeoLocation center) {
+        this.boundingBox = null;
         this.center = center;
-        if (this.hasListeners()) {
-            this.setupQueries();
-        }
+        this.criteriaChanged();
     }
 
     /**
-     * Returns the radius of the query, in kilometers.
+     * Returns the radius of the query, in kilometers. For a bounding box query it is the distance from the center to
+     * the farthest corner of the box.
      *
      * @return The radius of this query, in kilometers
      */
@@ -393,116 +508,231 @@ public class GeoQuery {
     }
 
     /**
-     * Sets the radius of this query, in kilometers, and triggers new events if necessary.
+     * Sets the radius of this query, in kilometers, and triggers new events if necessary. A bounding box query becomes
+     * a radius query around its current center.
      *
      * @param radius The new radius value of this query in kilometers
      */
     public synchronized void setRadius(double radius) {
+        this.boundingBox = null;
         // convert to meters
         this.radius = radius * 1000;
-        if (this.hasListeners()) {
-            this.setupQueries();
-        }
+        this.criteriaChanged();
     }
 
     /**
-     * Sets the center and radius (in kilometers) of this query, and triggers new events if necessary.
+     * Sets the center and radius (in kilometers) of this query, and triggers new events if necessary. A bounding box
+     * query becomes a radius query.
      *
      * @param center The new center
      * @param radius The new radius value of this query in kilometers
      */
     public synchronized void setLocation(GeoLocation center, double radius) {
+        this.boundingBox = null;
         this.center = center;
         // convert radius to meters
         this.radius = radius * 1000;
-        if (this.hasListeners()) {
-            this.setupQueries();
-        }
+        this.criteriaChanged();
     }
 
     /**
-     * Registers ChildEventListener for selected query.
+     * Returns the bounding box of this query.
      *
-     * @param query Query instance to which we attach ChildEventListener.
+     * @return The bounding box, or null if this query is a radius query
      */
-    void addChildEventListener(Query query) {
-        // register to all events to query -> this.childEventLister();
-        try {
-            query.on(Query.Event.CHILD_ADDED, new OnQuery() {
-                @Override
-                public void onComplete(DataSnapshot dataSnapshot, @Nullable String s) {
-                    childEventLister.onChildAdded(dataSnapshot, s);
-                }
-
-                @Override
-                public void onCancel(WebcomError webcomError) {
-                }
+    public synchronized BoundingBox getBoundingBox() {
+        return this.boundingBox;
+    }
 
-                @Override
-                public void onError(WebcomError webcomError) {
-                }
-            });
-            query.on(Query.Event.CHILD_CHANGED, new OnQuery() {
-                @Override
-                public void onComplete(DataSnapshot dataSnapshot, @Nullable String s) {
-                    childEventLister.onChildChanged(dataSnapshot, s);
-                }
+    /**
+     * Turns this query into a bounding box query of the given corners and triggers new events if necessary.
+     *
+     * @param southWest The south west corner of the box
+     * @param northEast The north east corner of the box, west of the south west corner if the box crosses the
+     *                  antimeridian
+     */
+    public synchronized void setBoundingBox(GeoLocation southWest, GeoLocation northEast) {
+        this.setBoundingBoxCriteria(boundingBoxOf(southWest, northEast));
+        this.criteriaChanged();
+    }
 
-                @Override
-                public void onCancel(WebcomError webcomError) {
+    /**
+     * Limits the number of cells this query subscribes to. A center and radius needing more cells than the budget
+     * make the query leave all its cells, the listeners get an error instead of the ready event, until a smaller
+     * area fits the budget again.
+     *
+     * @param maxCells         Maximal number of cells, Integer.MAX_VALUE for no limit
+     * @param allowCoarsening  True to subscribe to cells of a coarser storage precision of GeoFire before the budget
+     *                         is exceeded, filtering the additional keys out locally. False to only subscribe to cells
+     *                         of the default precision.
+     */
+    public synchronized void setCellBudget(int maxCells, boolean allowCoarsening) {
+        if (maxCells < 1) {
+            throw new IllegalArgumentException("Cell budget must be positive: " + maxCells);
+        }
+        this.cellBudget = maxCells;
+        this.coarseningAllowed = allowCoarsening;
+        if (this.hasListeners()) {
+            cancelPendingReplan();
+            this.criteriaGeneration++;
+            this.setupQueries();
+        }
+    }
 
-                }
+    public synchronized int getCellBudget() {
+        return this.cellBudget;
+    }
 
-                @Override
-                public void onError(WebcomError webcomError) {
+    public synchronized boolean isCoarseningAllowed() {
+        return this.coarseningAllowed;
+    }
 
-                }
-            });
-            query.on(Query.Event.CHILD_REMOVED, new OnQuery() {
-                @Override
-                public void onComplete(DataSnapshot dataSnapshot, @Nullable String s) {
-                    childEventLister.onChildRemoved(dataSnapshot);
-                }
+    /**
+     * Plans the current center and radius without subscribing to anything, e.g. to check the cost of a radius before
+     * adding a listener.
+     *
+     * @return The number of cells the query subscribes to for its current center and radius.
+     */
+    public synchronized int getPlannedCellCount() {
+        return planQuery().getCellCount();
+    }
 
-                @Override
-                public void onCancel(WebcomError webcomError) {
+    /**
+     * Enables coalesced re-planning. Changes of center and radius are then collected until no change happened for
+     * the quiet period, or until the maximal delay since the first collected change has passed, and are applied in
+     * one plan diff computed off the calling thread. Keys already known are tested against the new criteria at that
+     * point too.
+     *
+     * @param quietPeriodMillis Time without changes after which the query is re-planned, 0 re-plans on every change
+     * @param maxDelayMillis    Maximal time a change waits before the query is re-planned
+     */
+    public synchronized void setReplanDelay(long quietPeriodMillis, long maxDelayMillis) {
+        if (quietPeriodMillis < 0 || maxDelayMillis < quietPeriodMillis) {
+            throw new IllegalArgumentException("Invalid re-planning delays: " + quietPeriodMillis + ", " + maxDelayMillis);
+        }
+        this.replanQuietPeriodMillis = quietPeriodMillis;
+        this.replanMaxDelayMillis = maxDelayMillis;
+        if (quietPeriodMillis == 0 && this.pendingReplan != null) {
+            cancelPendingReplan();
+            this.setupQueries();
+        }
+    }
 
-                }
+    private void criteriaChanged() {
+        this.circleFilter = new CircleFilter(this.center.latitude, this.center.longitude, this.radius);
+        this.criteriaGeneration++;
+        if (!this.hasListeners()) {
+            return;
+        }
+        if (this.replanQuietPeriodMillis == 0) {
+            this.setupQueries();
+            return;
+        }
+        long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        if (this.pendingReplan == null) {
+            this.firstPendingChangeMillis = now;
+        } else {
+            this.pendingReplan.cancel(false);
+        }
+        long delay = Math.max(0, Math.min(this.replanQuietPeriodMillis,
+                this.firstPendingChangeMillis + this.replanMaxDelayMillis - now));
+        final int sequence = ++this.replanSequence;
+        this.pendingReplan = this.geoFire.schedule(new Runnable() {
+            @Override
+            public void run() {
+                replan(sequence);
+            }
+        }, delay);
+    }
 
-                @Override
-                public void onError(WebcomError webcomError) {
+    private void replan(int sequence) {
+        GeoLocation plannedCenter;
+        double plannedRadius;
+        BoundingBox plannedBoundingBox;
+        int plannedCellBudget;
+        boolean plannedCoarsening;
+        int generation;
+        synchronized (this) {
+            // a task that started as a later change rescheduled cannot be cancelled, the later one replans instead
+            if (sequence != this.replanSequence || this.pendingReplan == null) {
+                return;
+            }
+            this.pendingReplan = null;
+            if (!this.hasListeners()) {
+                return;
+            }
+            plannedCenter = this.center;
+            plannedRadius = this.radius;
+            plannedBoundingBox = this.boundingBox;
+            plannedCellBudget = this.cellBudget;
+            plannedCoarsening = this.coarseningAllowed;
+            generation = this.criteriaGeneration;
+        }
+        // the plan is computed without holding the lock, child events keep flowing meanwhile
+        QueryPlan newPlan = planQuery(plannedCenter, plannedRadius, plannedBoundingBox, plannedCellBudget,
+                plannedCoarsening);
+        synchronized (this) {
+            // a newer change has scheduled its own re-planning
+            if (generation == this.criteriaGeneration && this.hasListeners()) {
+                this.setupQueries(newPlan);
+            }
+        }
+    }
 
-                }
-            });
-        } catch (WebcomException e) {
-            e.printStackTrace();
+    private void cancelPendingReplan() {
+        if (this.pendingReplan != null) {
+            this.pendingReplan.cancel(false);
+            this.pendingReplan = null;
         }
     }
 
     /**
-     * Unregisters ChildEventListener from selected query.
+     * Attaches this query to the shared subscription of the selected cell.
      *
-     * @param query Query to unregister.
+     * @param cell Geohash of the cell to which we attach.
      */
-    void removeChildEventListener(Query query) {
-        // unregister event listener
-        try {
-            query.off();
-        } catch (WebcomException e) {
-            e.printStackTrace();
-        }
+    void addChildEventListener(String cell) {
+        this.geoFire.getCellSubscriptions().attach(cell, cellListener);
     }
 
     /**
-     *  Return location info for selected key, if it's location is present within current query area.
+     * Detaches this query from the shared subscription of the selected cell.
+     *
+     * @param cell Geohash of the cell to detach from.
+     */
+    void removeChildEventListener(String cell) {
+        this.geoFire.getCellSubscriptions().detach(cell, cellListener);
+    }
+
+    /**
+     *  Return location for selected key, if it's location is present within current query area.
      * @param key Searhced key value.
-     * @return LocationInfo for selected key if present, otherwise null.
+     * @return Location of selected key if present, otherwise null.
      */
-    public LocationInfo getLocationOfKey( String key) {
-        if( locationInfos.containsKey(key)) {
-            return locationInfos.get(key);
+    public synchronized GeoLocation getLocationOfKey( String key) {
+        int id = this.locations.indexOf(key);
+        return id < 0 ? null : this.locations.getLocation(id);
+    }
+
+    /**
+     * Tells if a key was reported from the cell cache of the GeoFire instance and its cell is not downloaded yet.
+     * A stale key may have moved or been removed, which is reported once its cell is downloaded.
+     *
+     * @param key The key to check
+     * @return True if the key is known to this query only from the cache.
+     */
+    public synchronized boolean isKeyStale(String key) {
+        int id = this.locations.indexOf(key);
+        if (id < 0) {
+            return false;
         }
-        return null;
+        return this.geoFire.getCellSubscriptions().isStale(cellOf(id, this.subscribedPrecision), key);
+    }
+
+    //  Cell of the key if the key is known, null otherwise
+    private synchronized String cellOfKey(String key) {
+        int id = this.locations.indexOf(key);
+        return id < 0 ? null : cellOf(id, GeoHash.DEFAULT_PRECISION);
     }
 
     /** Removes location for selected key, if if it's location is present within current query area.
@@ -511,8 +741,9 @@ public class GeoQuery {
      * @param completionListener Callback listener.
      */
     public void RemoveLocationForKey ( String key, final OnComplete completionListener){
-        if( locationInfos.containsKey(key)) {
-            geoFire.removeLocation( key, locationInfos.get(key).geoHash.getGeoHashString(), completionListener);
+        String cell = cellOfKey(key);
+        if( cell != null) {
+            geoFire.removeLocation( key, cell, completionListener);
             return;
         }
         if( completionListener != null){
@@ -520,25 +751,17 @@ public class GeoQuery {
         }
     }
 
-    /** Update location for selected key, if if it's location is present within current query area.
+    /** Update location for selected key, if if it's location is present within current query area. The key is
+     * updated in place if it stays in its cell, and moved with a single write otherwise.
      *
-     * @param key Value of key which is to be removed.
+     * @param key Value of key which is to be updated.
      * @param newLocation Updated location for key.
      * @param completionListener Callback listener.
      */
     public void UpdatetLocationForKey(final String key, final GeoLocation newLocation, final OnComplete completionListener){
-        if( locationInfos.containsKey(key)) {
-            geoFire.removeLocation(key, locationInfos.get(key).geoHash.getGeoHashString(), new OnComplete() {
-                @Override
-                public void onComplete() {
-                    geoFire.addNewLocation( key, newLocation, completionListener);
-                }
-
-                @Override
-                public void onError(WebcomError webcomError) {
-                    completionListener.onError( new WebcomError("UpdateError", "Failed to update key " + key));
-                }
-            });
+        String cell = cellOfKey(key);
+        if( cell != null) {
+            geoFire.moveLocation(key, newLocation, cell, completionListener);
             return;
         }
         if( completionListener != null){
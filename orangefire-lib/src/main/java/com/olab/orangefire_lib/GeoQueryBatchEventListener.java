@@ -0,0 +1,51 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives the events of a GeoQuery in batches. All changes caused by one backend event or one re-planning of the
+ * query are delivered in a single dispatch, in the order entered, moved, exited, ready.
+ *
+ * Changes are coalesced per key within a batch, so every key appears at most once: a key that entered and exited
+ * again is not reported at all, and a key that exited and entered again is reported as moved.
+ */
+public interface GeoQueryBatchEventListener {
+
+    /**
+     * Called with the keys that entered the search area. When the listener is added, this method is called with
+     * every key currently in the search area.
+     *
+     * @param locations The keys that entered the search area and their locations
+     */
+    void onKeysEntered(Map<String, GeoLocation> locations);
+
+    /**
+     * Called with the keys that moved within the search area.
+     *
+     * @param locations The keys that moved and their new locations
+     */
+    void onKeysMoved(Map<String, GeoLocation> locations);
+
+    /**
+     * Called with the keys that exited the search area.
+     *
+     * @param keys The keys that exited the search area
+     */
+    void onKeysExited(List<String> keys);
+
+    /**
+     * Called once all initial GeoFire data has been loaded and the relevant events have been fired for this query.
+     * Every time the query criteria is updated, this observer will be called after the updated query has fired the
+     * appropriate events.
+     */
+    void onGeoQueryReady();
+
+    /**
+     * Called in case an error occurred while retrieving locations for a query, e.g. violating security rules.
+     * @param webcomError The error that occurred while retrieving the query
+     */
+    void onGeoQueryError(WebcomError webcomError);
+}
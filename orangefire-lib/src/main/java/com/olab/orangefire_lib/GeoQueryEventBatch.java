@@ -0,0 +1,79 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Events of a GeoQuery collected for a single dispatch, coalesced per key. A batch is filled under the lock of its
+ * query and must not be modified anymore once it has been handed to the listeners.
+ */
+class GeoQueryEventBatch {
+
+    private final Map<String, GeoLocation> entered = new LinkedHashMap<String, GeoLocation>();
+    private final Map<String, GeoLocation> moved = new LinkedHashMap<String, GeoLocation>();
+    private final Set<String> exited = new LinkedHashSet<String>();
+    private final List<WebcomError> errors = new ArrayList<WebcomError>();
+    private boolean ready;
+
+    void keyEntered(String key, GeoLocation location) {
+        if (this.exited.remove(key)) {
+            // listeners still know the key from before this batch
+            this.moved.put(key, location);
+        } else {
+            this.entered.put(key, location);
+        }
+    }
+
+    void keyMoved(String key, GeoLocation location) {
+        if (this.entered.containsKey(key)) {
+            this.entered.put(key, location);
+        } else {
+            this.moved.put(key, location);
+        }
+    }
+
+    void keyExited(String key) {
+        if (this.entered.remove(key) == null) {
+            this.moved.remove(key);
+            this.exited.add(key);
+        }
+    }
+
+    void error(WebcomError webcomError) {
+        this.errors.add(webcomError);
+    }
+
+    void ready() {
+        this.ready = true;
+    }
+
+    boolean isEmpty() {
+        return this.entered.isEmpty() && this.moved.isEmpty() && this.exited.isEmpty() && this.errors.isEmpty()
+                && !this.ready;
+    }
+
+    void deliverTo(GeoQueryBatchEventListener listener) {
+        if (!this.entered.isEmpty()) {
+            listener.onKeysEntered(Collections.unmodifiableMap(this.entered));
+        }
+        if (!this.moved.isEmpty()) {
+            listener.onKeysMoved(Collections.unmodifiableMap(this.moved));
+        }
+        if (!this.exited.isEmpty()) {
+            listener.onKeysExited(Collections.unmodifiableList(new ArrayList<String>(this.exited)));
+        }
+        for (WebcomError webcomError : this.errors) {
+            listener.onGeoQueryError(webcomError);
+        }
+        if (this.ready) {
+            listener.onGeoQueryReady();
+        }
+    }
+}
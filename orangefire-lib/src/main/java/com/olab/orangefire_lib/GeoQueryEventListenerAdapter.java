@@ -0,0 +1,49 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delivers the batches of a GeoQuery key by key to a GeoQueryEventListener.
+ */
+class GeoQueryEventListenerAdapter implements GeoQueryBatchEventListener {
+
+    private final GeoQueryEventListener listener;
+
+    GeoQueryEventListenerAdapter(GeoQueryEventListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onKeysEntered(Map<String, GeoLocation> locations) {
+        for (Map.Entry<String, GeoLocation> entry : locations.entrySet()) {
+            this.listener.onKeyEntered(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void onKeysMoved(Map<String, GeoLocation> locations) {
+        for (Map.Entry<String, GeoLocation> entry : locations.entrySet()) {
+            this.listener.onKeyMoved(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void onKeysExited(List<String> keys) {
+        for (String key : keys) {
+            this.listener.onKeyExited(key);
+        }
+    }
+
+    @Override
+    public void onGeoQueryReady() {
+        this.listener.onGeoQueryReady();
+    }
+
+    @Override
+    public void onGeoQueryError(WebcomError webcomError) {
+        this.listener.onGeoQueryError(webcomError);
+    }
+}
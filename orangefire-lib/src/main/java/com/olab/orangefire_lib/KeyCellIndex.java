@@ -0,0 +1,153 @@
+package com.olab.orangefire_lib;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the cell every key was last written to by this client, so GeoFire can move and remove keys without
+ * being told their previous position. The index keeps the most recently used keys up to a maximal number of entries.
+ *
+ * An index created with a file loads it on creation and writes it back on save and when its GeoFire is shut down.
+ * The index is thread safe.
+ */
+public class KeyCellIndex {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    // Version of the file format
+    private static final int FILE_VERSION = 1;
+
+    private final int maxEntries;
+    private final PersistedFile file;
+    private final LinkedHashMap<String, String> cellsByKey;
+
+    /**
+     * Creates an index in memory holding up to DEFAULT_MAX_ENTRIES keys.
+     */
+    public KeyCellIndex() {
+        this(DEFAULT_MAX_ENTRIES, null);
+    }
+
+    /**
+     * Creates an index in memory.
+     *
+     * @param maxEntries Maximal number of keys, the least recently used keys are forgotten first
+     */
+    public KeyCellIndex(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    /**
+     * Creates an index persisted in a file. The content of the file is loaded if it exists.
+     *
+     * @param maxEntries Maximal number of keys, the least recently used keys are forgotten first
+     * @param file       File the index is persisted in, may be null
+     */
+    public KeyCellIndex(final int maxEntries, File file) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximal number of entries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.file = file == null ? null : new PersistedFile(file, FILE_VERSION, "KeyCellIndex");
+        this.cellsByKey = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (file != null) {
+            load();
+        }
+    }
+
+    /**
+     * @param key The key to look up
+     * @return The cell the key was last written to, or null if it is unknown.
+     */
+    public synchronized String getCell(String key) {
+        return this.cellsByKey.get(key);
+    }
+
+    /**
+     * @return The previous cell of the key, or null if it was unknown.
+     */
+    synchronized String put(String key, String cell) {
+        return this.cellsByKey.put(key, cell);
+    }
+
+    /**
+     * Sets the cell of a key only if the key is still in the expected cell.
+     */
+    synchronized void replace(String key, String expectedCell, String cell) {
+        if (expectedCell.equals(this.cellsByKey.get(key))) {
+            this.cellsByKey.put(key, cell);
+        }
+    }
+
+    /**
+     * Puts back the cell of a key whose removal failed, unless the key was written again in the meantime.
+     */
+    synchronized void restore(String key, String cell) {
+        if (!this.cellsByKey.containsKey(key)) {
+            this.cellsByKey.put(key, cell);
+        }
+    }
+
+    synchronized String remove(String key) {
+        return this.cellsByKey.remove(key);
+    }
+
+    /**
+     * @return The number of keys in the index.
+     */
+    public synchronized int size() {
+        return this.cellsByKey.size();
+    }
+
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    public synchronized void clear() {
+        this.cellsByKey.clear();
+    }
+
+    /**
+     * Writes the index to its file, if it has one. The file is replaced atomically, from the least to the most
+     * recently used key, so loading it restores the order of use.
+     *
+     * @throws IOException If the file could not be written
+     */
+    public synchronized void save() throws IOException {
+        if (this.file == null) {
+            return;
+        }
+        this.file.replace(new PersistedFile.Writer() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                out.writeInt(cellsByKey.size());
+                for (Map.Entry<String, String> entry : cellsByKey.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+            }
+        });
+    }
+
+    private void load() {
+        this.file.load(new PersistedFile.Reader() {
+            @Override
+            public void read(DataInputStream in) throws IOException {
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    String key = in.readUTF();
+                    cellsByKey.put(key, in.readUTF());
+                }
+            }
+        });
+    }
+}
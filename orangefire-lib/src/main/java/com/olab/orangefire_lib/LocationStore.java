@@ -0,0 +1,155 @@
+package com.olab.orangefire_lib;
+
+import com.olab.orangefire_lib.core.GeoHash;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The keys known to a GeoQuery with their locations, stored column-wise. Every key is mapped to an int id indexing
+ * primitive columns for latitude, longitude and geohash of maximal precision, and a bit set holds whether the key is
+ * inside the query. Updates are done in place, so tracking a key allocates nothing beyond its map entry. Ids of
+ * removed keys are reused.
+ *
+ * The store is not thread safe, GeoQuery guards it with its own lock.
+ */
+class LocationStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private final BitSet usedIds = new BitSet();
+    private final BitSet inQuery = new BitSet();
+
+    // Columns indexed by id
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private long[] hashes = new long[INITIAL_CAPACITY];
+
+    private int[] freeIds = new int[INITIAL_CAPACITY];
+    private int freeIdCount;
+    private int allocatedIdCount;
+
+    /**
+     * @return The id of the key, or -1 if the key is not stored.
+     */
+    int indexOf(String key) {
+        Integer id = this.ids.get(key);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Stores a key that is not stored yet, outside of the query.
+     *
+     * @return The id of the key.
+     */
+    int add(String key, double latitude, double longitude) {
+        int id = allocateId();
+        this.ids.put(key, id);
+        this.usedIds.set(id);
+        this.keys[id] = key;
+        setLocation(id, latitude, longitude);
+        return id;
+    }
+
+    void setLocation(int id, double latitude, double longitude) {
+        this.latitudes[id] = latitude;
+        this.longitudes[id] = longitude;
+        this.hashes[id] = GeoHash.encode(latitude, longitude, GeoHash.MAX_PRECISION);
+    }
+
+    void remove(int id) {
+        this.ids.remove(this.keys[id]);
+        this.usedIds.clear(id);
+        this.inQuery.clear(id);
+        this.keys[id] = null;
+        if (this.freeIdCount == this.freeIds.length) {
+            this.freeIds = Arrays.copyOf(this.freeIds, this.freeIds.length * 2);
+        }
+        this.freeIds[this.freeIdCount++] = id;
+    }
+
+    void clear() {
+        this.ids.clear();
+        this.usedIds.clear();
+        this.inQuery.clear();
+        Arrays.fill(this.keys, 0, this.allocatedIdCount, null);
+        this.freeIdCount = 0;
+        this.allocatedIdCount = 0;
+    }
+
+    /**
+     * @return The first id in use not smaller than the given one, or -1 if there is none.
+     */
+    int nextId(int fromId) {
+        return this.usedIds.nextSetBit(fromId);
+    }
+
+    /**
+     * @return An upper bound of the ids in use, the columns are valid up to this bound.
+     */
+    int getIdLimit() {
+        return this.allocatedIdCount;
+    }
+
+    // Columns for batch evaluation, entries of unused ids are to be ignored
+    double[] latitudes() {
+        return this.latitudes;
+    }
+
+    double[] longitudes() {
+        return this.longitudes;
+    }
+
+    int size() {
+        return this.ids.size();
+    }
+
+    String getKey(int id) {
+        return this.keys[id];
+    }
+
+    double getLatitude(int id) {
+        return this.latitudes[id];
+    }
+
+    double getLongitude(int id) {
+        return this.longitudes[id];
+    }
+
+    GeoLocation getLocation(int id) {
+        return new GeoLocation(this.latitudes[id], this.longitudes[id]);
+    }
+
+    /**
+     * @return The geohash of the location of the key, of maximal precision.
+     */
+    long getHash(int id) {
+        return this.hashes[id];
+    }
+
+    boolean isInQuery(int id) {
+        return this.inQuery.get(id);
+    }
+
+    void setInQuery(int id, boolean inQuery) {
+        this.inQuery.set(id, inQuery);
+    }
+
+    private int allocateId() {
+        if (this.freeIdCount > 0) {
+            return this.freeIds[--this.freeIdCount];
+        }
+        if (this.allocatedIdCount == this.keys.length) {
+            int capacity = this.keys.length * 2;
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+            this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+            this.hashes = Arrays.copyOf(this.hashes, capacity);
+        }
+        return this.allocatedIdCount++;
+    }
+}
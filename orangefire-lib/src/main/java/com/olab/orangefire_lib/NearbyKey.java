@@ -0,0 +1,46 @@
+package com.olab.orangefire_lib;
+
+/**
+ * A key found by a nearest keys query, with its location and its distance to the center of the query.
+ */
+public final class NearbyKey {
+
+    /** The key */
+    public final String key;
+
+    /** The location of the key */
+    public final GeoLocation location;
+
+    /** The distance from the center of the query to the key, in meters */
+    public final double distance;
+
+    public NearbyKey(String key, GeoLocation location, double distance) {
+        this.key = key;
+        this.location = location;
+        this.distance = distance;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        NearbyKey that = (NearbyKey) o;
+
+        return Double.compare(that.distance, distance) == 0 && key.equals(that.key) && location.equals(that.location);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = key.hashCode();
+        result = 31 * result + location.hashCode();
+        long temp = Double.doubleToLongBits(distance);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "NearbyKey(" + key + ", " + location + ", " + distance + ")";
+    }
+}
@@ -0,0 +1,25 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.List;
+
+/**
+ * Classes implementing this interface can be used to receive the result of a nearest keys query.
+ */
+public interface NearestKeysCallback {
+
+    /**
+     * Called once with the nearest keys found.
+     * @param keys The keys sorted by ascending distance to the center. Fewer keys than asked for are found if the
+     *             remaining keys are farther than the maximal distance of the query.
+     */
+    void onNearestKeys(List<NearbyKey> keys);
+
+    /**
+     * Called instead of onNearestKeys if a cell could not be read due to failure on the server or security rules.
+     * @param webcomError The error that occurred
+     */
+    void onCancelled(WebcomError webcomError);
+
+}
@@ -0,0 +1,271 @@
+package com.olab.orangefire_lib;
+
+import com.olab.orangefire_lib.backend.GeoFireBackend;
+import com.olab.orangefire_lib.core.BoundingBox;
+import com.olab.orangefire_lib.core.CellRange;
+import com.olab.orangefire_lib.core.CircleCover;
+import com.olab.orangefire_lib.core.GeoHash;
+import com.olab.orangefire_lib.util.GeoUtils;
+
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Finds the k keys nearest to a location by reading cells of default precision in rings of increasing radius around
+ * it, ring n being the cells of the cover of a circle of radius r(n) that are not part of the cover of the circle of
+ * radius r(n - 1). Each ring is read at once and the k nearest keys seen so far are kept in a max-heap. After ring n
+ * every key within r(n) has been seen, so reading stops once the k-th nearest key is within r(n), or r(n) reaches
+ * the maximal distance.
+ *
+ * The radius grows by half at each ring while fewer than k keys are known, and jumps to the distance of the k-th
+ * nearest key as soon as k keys are known since no farther cell can hold a nearer key. The query fails instead of
+ * reading a ring that takes the number of cells read beyond its maximal number of cells, which bounds its cost when
+ * keys are sparse or near the poles.
+ *
+ * The query also fails once its timeout has passed, e.g. when a read is dropped by the backend because the last query
+ * subscribed to the cell released it meanwhile. The callback is called once, through an event raiser of the GeoFire
+ * instance.
+ */
+class NearestQuery {
+
+    // Growth of the radius from one ring to the next while fewer than k keys are known
+    private static final double RADIUS_GROWTH = 1.5;
+
+    private static final Comparator<NearbyKey> FARTHEST_FIRST = new Comparator<NearbyKey>() {
+        @Override
+        public int compare(NearbyKey key1, NearbyKey key2) {
+            return Double.compare(key2.distance, key1.distance);
+        }
+    };
+
+    private final GeoFire geoFire;
+    private final GeoFireBackend backend;
+    private final GeoLocation center;
+    private final int k;
+    private final double maxDistance;
+    private final int maxCells;
+    private final long timeoutMillis;
+    private final NearestKeysCallback callback;
+    private final EventRaiser eventRaiser;
+
+    private final PriorityQueue<NearbyKey> nearest;
+    private final Set<String> seenKeys = new HashSet<String>();
+    // radius and cover of the rings read so far, null before the first ring
+    private double radius;
+    private CircleCover cover;
+    private int outstandingCells;
+    private boolean done;
+    // set if the query is done because of the cell budget
+    private WebcomError error;
+    private ScheduledFuture<?> timeout;
+
+    private final GeoFireBackend.ValueListener cellListener = new GeoFireBackend.ValueListener() {
+        @Override
+        public void onDataChange(String cell, Map<String, GeoLocation> locations) {
+            cellRead(locations);
+        }
+
+        @Override
+        public void onCancelled(WebcomError webcomError) {
+            synchronized (NearestQuery.this) {
+                if (NearestQuery.this.done) {
+                    return;
+                }
+                NearestQuery.this.done = true;
+            }
+            finish(null, webcomError);
+        }
+    };
+
+    private final Runnable timeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (NearestQuery.this) {
+                if (NearestQuery.this.done) {
+                    return;
+                }
+                NearestQuery.this.done = true;
+            }
+            finish(null, new WebcomError("Timeout", "Nearest keys query not answered within "
+                    + NearestQuery.this.timeoutMillis + " ms"));
+        }
+    };
+
+    /**
+     * @param maxDistance   Distance in meters beyond which keys are not considered
+     * @param maxCells      Number of cells read at most
+     * @param timeoutMillis Time after which the query fails if it is not done
+     */
+    NearestQuery(GeoFire geoFire, GeoLocation center, int k, double maxDistance, int maxCells, long timeoutMillis,
+                 NearestKeysCallback callback) {
+        this.geoFire = geoFire;
+        this.backend = geoFire.getBackend();
+        this.center = center;
+        this.k = k;
+        this.maxDistance = maxDistance;
+        this.maxCells = maxCells;
+        this.timeoutMillis = timeoutMillis;
+        this.callback = callback;
+        this.eventRaiser = geoFire.newEventRaiser();
+        this.nearest = new PriorityQueue<NearbyKey>(k, FARTHEST_FIRST);
+    }
+
+    void start() {
+        List<String> cells;
+        synchronized (this) {
+            this.timeout = this.geoFire.schedule(this.timeoutTask, this.timeoutMillis);
+            cells = nextRing();
+        }
+        readOrFinish(cells);
+    }
+
+    //  Reads the cells of the next ring, or reports the result once the query is done
+    private void readOrFinish(List<String> cells) {
+        List<NearbyKey> result = null;
+        WebcomError error;
+        synchronized (this) {
+            error = this.error;
+            if (this.done && error == null) {
+                result = new ArrayList<NearbyKey>(this.nearest);
+                Collections.sort(result, Collections.reverseOrder(FARTHEST_FIRST));
+            }
+        }
+        if (error != null || result != null) {
+            finish(result, error);
+        } else {
+            read(cells);
+        }
+    }
+
+    //  Reports the result or the error of the query, which is done
+    private void finish(final List<NearbyKey> result, final WebcomError error) {
+        synchronized (this) {
+            this.timeout.cancel(false);
+        }
+        this.eventRaiser.raiseEvent(new Runnable() {
+            @Override
+            public void run() {
+                if (error != null) {
+                    callback.onCancelled(error);
+                } else {
+                    callback.onNearestKeys(result);
+                }
+            }
+        });
+    }
+
+    private void read(List<String> cells) {
+        for (String cell : cells) {
+            this.backend.readCell(cell, this.cellListener);
+        }
+    }
+
+    private void cellRead(Map<String, GeoLocation> locations) {
+        List<String> cells;
+        synchronized (this) {
+            if (this.done) {
+                return;
+            }
+            for (Map.Entry<String, GeoLocation> entry : locations.entrySet()) {
+                offer(entry.getKey(), entry.getValue());
+            }
+            if (--this.outstandingCells > 0) {
+                return;
+            }
+            cells = nextRing();
+        }
+        readOrFinish(cells);
+    }
+
+    private void offer(String key, GeoLocation location) {
+        if (!this.seenKeys.add(key)) {
+            return;
+        }
+        double distance = GeoUtils.distance(this.center, location);
+        if (distance > this.maxDistance) {
+            return;
+        }
+        if (this.nearest.size() < this.k) {
+            this.nearest.add(new NearbyKey(key, location, distance));
+        } else if (distance < this.nearest.peek().distance) {
+            this.nearest.poll();
+            this.nearest.add(new NearbyKey(key, location, distance));
+        }
+    }
+
+    //  Cells of the next ring, or an empty list and done set if no key outside the rings read can be in the result or
+    //  the next ring exceeds the cell budget
+    private List<String> nextRing() {
+        while (true) {
+            double radius;
+            if (this.cover == null) {
+                // the first ring is about the cell of the center and its neighbors
+                BoundingBox cell = GeoHash.decode(
+                        GeoHash.encode(this.center.latitude, this.center.longitude, GeoHash.DEFAULT_PRECISION),
+                        GeoHash.DEFAULT_PRECISION);
+                radius = GeoUtils.distance(cell.minLatitude, this.center.longitude,
+                        cell.maxLatitude, this.center.longitude);
+            } else if (this.nearest.size() == this.k) {
+                if (this.nearest.peek().distance <= this.radius) {
+                    this.done = true;
+                    return Collections.emptyList();
+                }
+                radius = this.nearest.peek().distance;
+            } else {
+                radius = this.radius * RADIUS_GROWTH;
+            }
+            if (this.cover != null && this.radius >= this.maxDistance) {
+                this.done = true;
+                return Collections.emptyList();
+            }
+            List<String> cells = newCells(Math.min(radius, this.maxDistance));
+            if (cells == null) {
+                this.done = true;
+                this.error = new WebcomError("CellBudgetExceeded", "Nearest keys query needs more than "
+                        + this.maxCells + " cells within " + Math.min(radius, this.maxDistance) + " m");
+                return Collections.emptyList();
+            }
+            if (!cells.isEmpty()) {
+                this.outstandingCells = cells.size();
+                return cells;
+            }
+        }
+    }
+
+    //  Cells of the cover of a circle of the given radius not part of the previous cover, which becomes this one, or
+    //  null if the cover has more cells than the budget
+    private List<String> newCells(double radius) {
+        // covers grow with the radius, so the cells read so far are the cells of the last cover
+        CircleCover cover = CircleCover.atLocation(this.center, radius, GeoHash.DEFAULT_PRECISION, this.maxCells);
+        if (!cover.isComplete()) {
+            return null;
+        }
+        List<CellRange> previous = this.cover == null
+                ? Collections.<CellRange>emptyList() : this.cover.getRanges();
+        List<String> cells = new ArrayList<String>();
+        // both lists of ranges are sorted and the previous cover lies within this one
+        int index = 0;
+        for (CellRange range : cover.getRanges()) {
+            for (long cell = range.getFirst(); cell <= range.getLast(); cell++) {
+                while (index < previous.size() && previous.get(index).getLast() < cell) {
+                    index++;
+                }
+                if (index == previous.size() || !previous.get(index).contains(cell)) {
+                    cells.add(range.toBase32(cell));
+                }
+            }
+        }
+        this.radius = radius;
+        this.cover = cover;
+        return cells;
+    }
+}
@@ -0,0 +1,123 @@
+package com.olab.orangefire_lib;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * File of a KeyCellIndex or a CellCache, starting with the version of its format. The file is replaced atomically
+ * through a temporary file or appended to, and a file of another version, truncated or unreadable is logged instead
+ * of failing the load.
+ */
+final class PersistedFile {
+
+    interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    interface Reader {
+        /**
+         * Reads the content following the version. Entries read before the end of a truncated file are kept.
+         */
+        void read(DataInputStream in) throws IOException;
+    }
+
+    private final File file;
+    private final int version;
+    // name of the owner in the log
+    private final String owner;
+
+    PersistedFile(File file, int version, String owner) {
+        this.file = file;
+        this.version = version;
+        this.owner = owner;
+    }
+
+    File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Replaces the file by the version and the content written by the writer.
+     *
+     * @throws IOException If the file could not be written
+     */
+    void replace(Writer writer) throws IOException {
+        File temporary = new File(this.file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(this.version);
+            writer.write(out);
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(this.file)) {
+            // renameTo does not replace an existing file on every platform
+            if (!this.file.delete() || !temporary.renameTo(this.file)) {
+                throw new IOException("Could not replace " + this.file);
+            }
+        }
+    }
+
+    /**
+     * Adds the content written by the writer at the end of the file, after the version if the file is new.
+     *
+     * @throws IOException If the file could not be written
+     */
+    void append(Writer writer) throws IOException {
+        boolean isNew = this.file.length() == 0;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true)));
+        try {
+            if (isNew) {
+                out.writeInt(this.version);
+            }
+            writer.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the file if it exists and has the expected version.
+     *
+     * @return False if the file exists but was not read to its end, so it must be replaced before appending to it.
+     */
+    boolean load(Reader reader) {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+        } catch (FileNotFoundException e) {
+            return true;
+        }
+        try {
+            if (in.readInt() != this.version) {
+                Log.e("OrangeFire", "OrangeFire:" + this.owner + " Unknown format of " + this.file + ", ignoring it.");
+                return false;
+            }
+            reader.read(in);
+            return true;
+        } catch (EOFException e) {
+            Log.e("OrangeFire", "OrangeFire:" + this.owner + " " + this.file + " is truncated, keeping the entries read.");
+            return false;
+        } catch (IOException e) {
+            e.printStackTrace();
+            Log.e("OrangeFire", "OrangeFire:" + this.owner + " Failed to read " + this.file + ".");
+            return false;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
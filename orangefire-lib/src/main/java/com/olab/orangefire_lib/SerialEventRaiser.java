@@ -0,0 +1,83 @@
+package com.olab.orangefire_lib;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Raises events on an executor one at a time and in order. Each listener gets its own SerialEventRaiser, so listeners
+ * run in parallel on a concurrent executor while every listener still sees its events sequentially.
+ */
+class SerialEventRaiser implements EventRaiser {
+
+    private final Executor executor;
+    private final Queue<Runnable> events = new ArrayDeque<Runnable>();
+    private boolean draining;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            Runnable event;
+            while ((event = next()) != null) {
+                boolean completed = false;
+                try {
+                    event.run();
+                    completed = true;
+                } finally {
+                    if (!completed) {
+                        // the failing event is lost, the following ones are not
+                        resume();
+                    }
+                }
+            }
+        }
+    };
+
+    SerialEventRaiser(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void raiseEvent(Runnable r) {
+        synchronized (this) {
+            this.events.add(r);
+            if (this.draining) {
+                return;
+            }
+            this.draining = true;
+        }
+        start();
+    }
+
+    private synchronized Runnable next() {
+        Runnable event = this.events.poll();
+        if (event == null) {
+            this.draining = false;
+        }
+        return event;
+    }
+
+    private void resume() {
+        synchronized (this) {
+            if (this.events.isEmpty()) {
+                this.draining = false;
+                return;
+            }
+        }
+        start();
+    }
+
+    private void start() {
+        boolean started = false;
+        try {
+            this.executor.execute(this.drain);
+            started = true;
+        } finally {
+            if (!started) {
+                synchronized (this) {
+                    this.draining = false;
+                }
+            }
+        }
+    }
+}
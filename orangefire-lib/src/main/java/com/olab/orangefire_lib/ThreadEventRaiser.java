@@ -15,4 +15,8 @@ class ThreadEventRaiser implements EventRaiser {
     public void raiseEvent(Runnable r) {
         this.executorService.submit(r);
     }
+
+    void shutdown() {
+        this.executorService.shutdown();
+    }
 }
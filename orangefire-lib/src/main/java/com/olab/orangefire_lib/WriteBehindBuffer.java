@@ -0,0 +1,198 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.OnComplete;
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer of a GeoFire instance, keeping only the latest location written for every key.
+ *
+ * Buffered locations are sent together in a single backend write, grouped by cell, once the flush interval has
+ * passed since the first buffered location or as soon as the maximal number of keys is buffered. A location replaced
+ * before it was sent is counted as superseded, its completion listener is called with the outcome of the location
+ * replacing it. Removing a key drops its buffered location, whose completion listeners then receive an error.
+ *
+ * The buffer is thread safe.
+ */
+public class WriteBehindBuffer {
+
+    private static class PendingWrite {
+        GeoLocation location;
+        // cell of the key known to the writer, used if the key cell index does not know the key
+        String previousCell;
+        final List<OnComplete> completionListeners = new ArrayList<OnComplete>(1);
+    }
+
+    private final GeoFire geoFire;
+    private final long flushIntervalMillis;
+    private final int maxKeys;
+    private Map<String, PendingWrite> pendingWrites = new LinkedHashMap<String, PendingWrite>();
+    // held from taking the buffered locations until they are handed to the backend, so batches are sent in order
+    private final Object sendLock = new Object();
+    private ScheduledFuture<?> scheduledFlush;
+    private final AtomicLong supersededWrites = new AtomicLong();
+    private final AtomicLong flushedWrites = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    WriteBehindBuffer(GeoFire geoFire, long flushIntervalMillis, int maxKeys) {
+        if (flushIntervalMillis <= 0 || maxKeys <= 0) {
+            throw new IllegalArgumentException("Invalid write-behind settings: " + flushIntervalMillis + ", " + maxKeys);
+        }
+        this.geoFire = geoFire;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxKeys = maxKeys;
+    }
+
+    void write(String key, GeoLocation location, String previousCell, OnComplete onComplete) {
+        boolean full;
+        synchronized (this) {
+            PendingWrite write = this.pendingWrites.get(key);
+            if (write == null) {
+                write = new PendingWrite();
+                this.pendingWrites.put(key, write);
+            } else {
+                this.supersededWrites.incrementAndGet();
+            }
+            write.location = location;
+            if (write.previousCell == null) {
+                write.previousCell = previousCell;
+            }
+            if (onComplete != null) {
+                write.completionListeners.add(onComplete);
+            }
+            full = this.pendingWrites.size() >= this.maxKeys;
+            if (!full && this.scheduledFlush == null) {
+                this.scheduledFlush = this.geoFire.schedule(this.flushTask, this.flushIntervalMillis);
+            }
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Drops the buffered location of a key that is about to be removed.
+     */
+    void discard(String key) {
+        PendingWrite write;
+        synchronized (this) {
+            write = this.pendingWrites.remove(key);
+        }
+        if (write != null) {
+            this.supersededWrites.incrementAndGet();
+            WebcomError error = new WebcomError("Superseded", "Key " + key + " was removed before it was written");
+            for (OnComplete onComplete : write.completionListeners) {
+                onComplete.onError(error);
+            }
+        }
+    }
+
+    /**
+     * Sends all buffered locations now. Concurrent flushes send their locations in the order they took them from the
+     * buffer, so an older location never overwrites a newer one.
+     */
+    public void flush() {
+        synchronized (this.sendLock) {
+            Map<String, PendingWrite> writes;
+            synchronized (this) {
+                writes = takePendingWrites();
+            }
+            send(writes);
+        }
+    }
+
+    private Map<String, PendingWrite> takePendingWrites() {
+        if (this.scheduledFlush != null) {
+            this.scheduledFlush.cancel(false);
+            this.scheduledFlush = null;
+        }
+        Map<String, PendingWrite> writes = this.pendingWrites;
+        this.pendingWrites = new LinkedHashMap<String, PendingWrite>();
+        return writes;
+    }
+
+    private void send(final Map<String, PendingWrite> writes) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        this.flushes.incrementAndGet();
+        this.flushedWrites.addAndGet(writes.size());
+        Map<String, GeoLocation> locations = new LinkedHashMap<String, GeoLocation>();
+        Map<String, String> previousCells = new HashMap<String, String>();
+        for (Map.Entry<String, PendingWrite> entry : writes.entrySet()) {
+            locations.put(entry.getKey(), entry.getValue().location);
+            if (entry.getValue().previousCell != null) {
+                previousCells.put(entry.getKey(), entry.getValue().previousCell);
+            }
+        }
+        this.geoFire.addNewLocations(locations, previousCells, new OnComplete() {
+            @Override
+            public void onComplete() {
+                for (PendingWrite write : writes.values()) {
+                    for (OnComplete onComplete : write.completionListeners) {
+                        onComplete.onComplete();
+                    }
+                }
+            }
+
+            @Override
+            public void onError(WebcomError webcomError) {
+                for (PendingWrite write : writes.values()) {
+                    for (OnComplete onComplete : write.completionListeners) {
+                        onComplete.onError(webcomError);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The number of keys whose location is buffered.
+     */
+    public synchronized int size() {
+        return this.pendingWrites.size();
+    }
+
+    public long getFlushIntervalMillis() {
+        return this.flushIntervalMillis;
+    }
+
+    public int getMaxKeys() {
+        return this.maxKeys;
+    }
+
+    /**
+     * @return The number of locations replaced in the buffer, or dropped by a removal, before they were sent.
+     */
+    public long getSupersededWriteCount() {
+        return this.supersededWrites.get();
+    }
+
+    /**
+     * @return The number of locations sent to the backend.
+     */
+    public long getFlushedWriteCount() {
+        return this.flushedWrites.get();
+    }
+
+    /**
+     * @return The number of backend writes made by the buffer.
+     */
+    public long getFlushCount() {
+        return this.flushes.get();
+    }
+}
@@ -0,0 +1,94 @@
+package com.olab.orangefire_lib.backend;
+
+import com.olab.orangefire_lib.GeoLocation;
+import com.orange.webcom.sdk.OnComplete;
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.Map;
+
+/**
+ * Storage used by GeoFire and GeoQuery. Locations are kept per geohash cell, each cell maps keys to locations.
+ */
+public interface GeoFireBackend {
+
+    /**
+     * Receives the changes of the keys stored in one cell.
+     */
+    interface ChildListener {
+
+        void onChildAdded(String key, GeoLocation location);
+
+        void onChildChanged(String key, GeoLocation location);
+
+        void onChildRemoved(String key);
+
+        void onCancelled(WebcomError webcomError);
+    }
+
+    /**
+     * Receives the content of one cell.
+     */
+    interface ValueListener {
+
+        void onDataChange(String cell, Map<String, GeoLocation> locations);
+
+        void onCancelled(WebcomError webcomError);
+    }
+
+    /**
+     * Stores the location of a key in a cell.
+     *
+     * @param cell       Geohash of the cell
+     * @param key        The key to save the location for
+     * @param location   The location of this key
+     * @param onComplete Called once the location was saved or an error occurred, may be null
+     */
+    void setLocation(String cell, String key, GeoLocation location, OnComplete onComplete);
+
+    /**
+     * Removes a key from a cell.
+     *
+     * @param cell       Geohash of the cell
+     * @param key        The key to remove
+     * @param onComplete Called once the key was removed or an error occurred, may be null
+     */
+    void removeLocation(String cell, String key, OnComplete onComplete);
+
+    /**
+     * Applies changes to several keys at once, as a single write if the storage supports it. The events of the keys
+     * added or changed are delivered before the events of the keys removed, so a listener of both cells sees a key
+     * moving to another cell arrive in its new cell before it leaves its previous one, and can report a move rather
+     * than an exit followed by an entry.
+     *
+     * @param updates    For every cell, the keys to change in it mapped to their new location. A null location
+     *                   removes the key from the cell.
+     * @param onComplete Called once all changes were applied or an error occurred, may be null
+     */
+    void updateCells(Map<String, Map<String, GeoLocation>> updates, OnComplete onComplete);
+
+    /**
+     * Subscribes to the keys of a cell. onChildAdded is called for every key already stored in the cell. Events must
+     * be delivered asynchronously, never from within this call.
+     *
+     * @param cell     Geohash of the cell
+     * @param listener Listener to register
+     */
+    void addChildListener(String cell, ChildListener listener);
+
+    /**
+     * Unsubscribes a listener from a cell.
+     *
+     * @param cell     Geohash of the cell
+     * @param listener Listener to unregister
+     */
+    void removeChildListener(String cell, ChildListener listener);
+
+    /**
+     * Reads the content of a cell once. The listener is called asynchronously, after the onChildAdded events of
+     * listeners registered on the cell before this call.
+     *
+     * @param cell     Geohash of the cell
+     * @param listener Listener called with the content of the cell
+     */
+    void readCell(String cell, ValueListener listener);
+}
@@ -0,0 +1,248 @@
+package com.olab.orangefire_lib.backend;
+
+import com.olab.orangefire_lib.GeoLocation;
+import com.orange.webcom.sdk.OnComplete;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe GeoFireBackend keeping all cells in memory. Events and completions are delivered in order on a single
+ * background thread after a configurable latency, which makes it possible to load test and profile GeoFire without
+ * a Webcom server.
+ */
+public class InMemoryBackend implements GeoFireBackend {
+
+    private final Map<String, Map<String, GeoLocation>> cells = new HashMap<String, Map<String, GeoLocation>>();
+    private final Map<String, List<ChildListener>> listeners = new HashMap<String, List<ChildListener>>();
+    private final ScheduledExecutorService executorService;
+    private final long latencyNanos;
+    private final AtomicLong deliveredEvents = new AtomicLong();
+
+    /**
+     * Creates a backend delivering events without added latency.
+     */
+    public InMemoryBackend() {
+        this(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a backend delivering every event and completion after the given latency.
+     *
+     * @param latency Simulated latency of the server
+     * @param unit    Unit of the latency
+     */
+    public InMemoryBackend(long latency, TimeUnit unit) {
+        if (latency < 0) {
+            throw new IllegalArgumentException("Latency must not be negative: " + latency);
+        }
+        this.latencyNanos = unit.toNanos(latency);
+        this.executorService = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "InMemoryBackend");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private void deliver(Runnable r) {
+        if (this.latencyNanos == 0) {
+            this.executorService.execute(r);
+        } else {
+            this.executorService.schedule(r, this.latencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized boolean isRegistered(String cell, ChildListener listener) {
+        List<ChildListener> cellListeners = this.listeners.get(cell);
+        return cellListeners != null && cellListeners.contains(listener);
+    }
+
+    private synchronized List<ChildListener> listenersOf(String cell) {
+        List<ChildListener> cellListeners = this.listeners.get(cell);
+        return cellListeners == null ? new ArrayList<ChildListener>() : new ArrayList<ChildListener>(cellListeners);
+    }
+
+    private void complete(final OnComplete onComplete) {
+        if (onComplete != null) {
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    onComplete.onComplete();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void setLocation(final String cell, final String key, final GeoLocation location, OnComplete onComplete) {
+        final boolean added;
+        synchronized (this) {
+            Map<String, GeoLocation> cellLocations = this.cells.get(cell);
+            if (cellLocations == null) {
+                cellLocations = new HashMap<String, GeoLocation>();
+                this.cells.put(cell, cellLocations);
+            }
+            GeoLocation previous = cellLocations.put(key, location);
+            if (location.equals(previous)) {
+                complete(onComplete);
+                return;
+            }
+            added = previous == null;
+            for (final ChildListener listener : listenersOf(cell)) {
+                deliver(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isRegistered(cell, listener)) {
+                            deliveredEvents.incrementAndGet();
+                            if (added) {
+                                listener.onChildAdded(key, location);
+                            } else {
+                                listener.onChildChanged(key, location);
+                            }
+                        }
+                    }
+                });
+            }
+            complete(onComplete);
+        }
+    }
+
+    @Override
+    public void removeLocation(final String cell, final String key, OnComplete onComplete) {
+        synchronized (this) {
+            Map<String, GeoLocation> cellLocations = this.cells.get(cell);
+            if (cellLocations != null && cellLocations.remove(key) != null) {
+                if (cellLocations.isEmpty()) {
+                    this.cells.remove(cell);
+                }
+                for (final ChildListener listener : listenersOf(cell)) {
+                    deliver(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isRegistered(cell, listener)) {
+                                deliveredEvents.incrementAndGet();
+                                listener.onChildRemoved(key);
+                            }
+                        }
+                    });
+                }
+            }
+            complete(onComplete);
+        }
+    }
+
+    /**
+     * Applies the additions and changes first and the removals next, so their events are delivered in this order.
+     */
+    @Override
+    public void updateCells(Map<String, Map<String, GeoLocation>> updates, OnComplete onComplete) {
+        synchronized (this) {
+            for (Map.Entry<String, Map<String, GeoLocation>> cellUpdates : updates.entrySet()) {
+                for (Map.Entry<String, GeoLocation> update : cellUpdates.getValue().entrySet()) {
+                    if (update.getValue() != null) {
+                        setLocation(cellUpdates.getKey(), update.getKey(), update.getValue(), null);
+                    }
+                }
+            }
+            for (Map.Entry<String, Map<String, GeoLocation>> cellUpdates : updates.entrySet()) {
+                for (Map.Entry<String, GeoLocation> update : cellUpdates.getValue().entrySet()) {
+                    if (update.getValue() == null) {
+                        removeLocation(cellUpdates.getKey(), update.getKey(), null);
+                    }
+                }
+            }
+            complete(onComplete);
+        }
+    }
+
+    @Override
+    public void addChildListener(final String cell, final ChildListener listener) {
+        synchronized (this) {
+            List<ChildListener> cellListeners = this.listeners.get(cell);
+            if (cellListeners == null) {
+                cellListeners = new ArrayList<ChildListener>();
+                this.listeners.put(cell, cellListeners);
+            }
+            cellListeners.add(listener);
+            Map<String, GeoLocation> cellLocations = this.cells.get(cell);
+            if (cellLocations != null) {
+                for (Map.Entry<String, GeoLocation> entry : cellLocations.entrySet()) {
+                    final String key = entry.getKey();
+                    final GeoLocation location = entry.getValue();
+                    deliver(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isRegistered(cell, listener)) {
+                                deliveredEvents.incrementAndGet();
+                                listener.onChildAdded(key, location);
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void removeChildListener(String cell, ChildListener listener) {
+        List<ChildListener> cellListeners = this.listeners.get(cell);
+        if (cellListeners != null) {
+            cellListeners.remove(listener);
+            if (cellListeners.isEmpty()) {
+                this.listeners.remove(cell);
+            }
+        }
+    }
+
+    @Override
+    public void readCell(final String cell, final ValueListener listener) {
+        synchronized (this) {
+            Map<String, GeoLocation> cellLocations = this.cells.get(cell);
+            final Map<String, GeoLocation> snapshot = (cellLocations == null)
+                    ? new HashMap<String, GeoLocation>()
+                    : new HashMap<String, GeoLocation>(cellLocations);
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    deliveredEvents.incrementAndGet();
+                    listener.onDataChange(cell, snapshot);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return The number of keys stored in all cells.
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (Map<String, GeoLocation> cellLocations : this.cells.values()) {
+            size += cellLocations.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return The number of child and value events delivered to listeners so far.
+     */
+    public long getDeliveredEventCount() {
+        return this.deliveredEvents.get();
+    }
+
+    /**
+     * Stops the delivery thread. Pending events are dropped.
+     */
+    public void shutdown() {
+        this.executorService.shutdownNow();
+    }
+}
@@ -0,0 +1,330 @@
+package com.olab.orangefire_lib.backend;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.olab.orangefire_lib.GeoLocation;
+import com.olab.orangefire_lib.orangefire.Utility;
+import com.olab.orangefire_lib.util.LocationCodec;
+import com.orange.webcom.sdk.DataSnapshot;
+import com.orange.webcom.sdk.OnComplete;
+import com.orange.webcom.sdk.OnQuery;
+import com.orange.webcom.sdk.Query;
+import com.orange.webcom.sdk.Webcom;
+import com.orange.webcom.sdk.WebcomError;
+import com.orange.webcom.sdk.WebcomException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GeoFireBackend storing locations in a Webcom database. Every cell is a child of the root reference and stores
+ * locations as [latitude, longitude] arrays, or as compact strings if the backend is created with
+ * LocationFormat.COMPACT. Both formats are read whatever the format written, so writers can be migrated one by one.
+ */
+public class WebcomBackend implements GeoFireBackend {
+
+    /**
+     * Format of the locations written.
+     */
+    public enum LocationFormat {
+        /** [latitude, longitude] arrays, the format read by every version */
+        ARRAY,
+        /** 13 character strings of fixed-point coordinates, see LocationCodec */
+        COMPACT
+    }
+
+    private final Webcom databaseReference;
+    private final LocationFormat locationFormat;
+
+    /**
+     * @param databaseReference The Webcom reference under which the cells are stored
+     */
+    public WebcomBackend(Webcom databaseReference) {
+        this(databaseReference, LocationFormat.ARRAY);
+    }
+
+    /**
+     * @param databaseReference The Webcom reference under which the cells are stored
+     * @param locationFormat    The format of the locations written
+     */
+    public WebcomBackend(Webcom databaseReference, LocationFormat locationFormat) {
+        this.databaseReference = databaseReference;
+        this.locationFormat = locationFormat;
+    }
+
+    /**
+     * @return The Webcom reference under which the cells are stored.
+     */
+    public Webcom getDatabaseReference() {
+        return this.databaseReference;
+    }
+
+    /**
+     * @return The format of the locations written.
+     */
+    public LocationFormat getLocationFormat() {
+        return this.locationFormat;
+    }
+
+    /**
+     * Parses the location stored for a key, in either format.
+     *
+     * @param dataSnapshot Snapshot of the key
+     * @return The location or null if the data has an invalid format.
+     */
+    public static GeoLocation getLocationValue(DataSnapshot dataSnapshot) {
+        Object value = dataSnapshot.value();
+        if (value instanceof String) {
+            // compact locations are decoded without building a map of the snapshot
+            return LocationCodec.decode((String) value);
+        }
+        try {
+            Map<String, Object> data = dataSnapshot.valueMap(Object.class);
+            return getLocationValue(data);
+        } catch (WebcomException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    static GeoLocation getLocationValue(Object value) {
+        if (value instanceof String) {
+            return LocationCodec.decode((String) value);
+        }
+        try {
+            Number latitudeObj;
+            Number longitudeObj;
+            int size;
+            if (value instanceof List) {
+                List<?> data = (List<?>) value;
+                size = data.size();
+                latitudeObj = (Number) data.get(0);
+                longitudeObj = (Number) data.get(1);
+            } else {
+                Map<?, ?> data = (Map<?, ?>) value;
+                size = data.size();
+                latitudeObj = (Number) data.get("0");
+                longitudeObj = (Number) data.get("1");
+            }
+            double latitude = latitudeObj.doubleValue();
+            double longitude = longitudeObj.doubleValue();
+            if (size == 2 && GeoLocation.coordinatesValid(latitude, longitude)) {
+                return new GeoLocation(latitude, longitude);
+            } else {
+                return null;
+            }
+        } catch (NullPointerException | ClassCastException | IndexOutOfBoundsException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private Object toValue(GeoLocation location) {
+        if (this.locationFormat == LocationFormat.COMPACT) {
+            return LocationCodec.encode(location);
+        }
+        return Arrays.asList(location.latitude, location.longitude);
+    }
+
+    Webcom getDatabaseRefForGeoHash(String geohash) {
+        try {
+            return this.databaseReference.child(geohash);
+        } catch (WebcomException e) {
+            e.printStackTrace();
+            Log.e("OrangeFire","OrangeFire:getDatabaseRefForGeoHash  Error when getting reference for key.");
+            return null;
+        }
+    }
+
+    @Override
+    public void setLocation(String cell, String key, GeoLocation location, OnComplete onComplete) {
+        Webcom hashRef = this.getDatabaseRefForGeoHash(cell);
+        Map<String, Object> updates = new HashMap<String, Object>();
+        updates.put(key, toValue(location));
+        try {
+            if (onComplete != null) {
+                hashRef.update(updates, onComplete);
+            } else {
+                hashRef.update(updates);
+            }
+        } catch (WebcomException e) {
+            e.printStackTrace();
+            Log.e("OrangeFire","OrangeFire:setLocation Failed to push values to database.");
+            if (onComplete != null) {
+                onComplete.onError(e.getError());
+            }
+        }
+    }
+
+    @Override
+    public void removeLocation(String cell, String key, OnComplete onComplete) {
+        Webcom keyRef = this.getDatabaseRefForGeoHash(cell);
+        try {
+            if (onComplete != null) {
+                keyRef.child(key).remove(onComplete);
+            } else {
+                keyRef.child(key).remove();
+            }
+        } catch (WebcomException e) {
+            e.printStackTrace();
+            Log.e("OrangeFire","OrangeFire:removeLocation Failed to remove value from database.");
+            if (onComplete != null) {
+                onComplete.onError(e.getError());
+            }
+        }
+    }
+
+    /**
+     * Applies all changes with a single multi-path update of the root reference, so they succeed or fail together.
+     * The paths are given with the additions first, the order in which the local events of the update are raised.
+     */
+    @Override
+    public void updateCells(Map<String, Map<String, GeoLocation>> updates, OnComplete onComplete) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Map<String, GeoLocation>> cellUpdates : updates.entrySet()) {
+            for (Map.Entry<String, GeoLocation> update : cellUpdates.getValue().entrySet()) {
+                if (update.getValue() != null) {
+                    values.put(cellUpdates.getKey() + "/" + update.getKey(), toValue(update.getValue()));
+                }
+            }
+        }
+        for (Map.Entry<String, Map<String, GeoLocation>> cellUpdates : updates.entrySet()) {
+            for (Map.Entry<String, GeoLocation> update : cellUpdates.getValue().entrySet()) {
+                if (update.getValue() == null) {
+                    values.put(cellUpdates.getKey() + "/" + update.getKey(), null);
+                }
+            }
+        }
+        try {
+            if (onComplete != null) {
+                this.databaseReference.update(values, onComplete);
+            } else {
+                this.databaseReference.update(values);
+            }
+        } catch (WebcomException e) {
+            e.printStackTrace();
+            Log.e("OrangeFire","OrangeFire:updateCells Failed to push values to database.");
+            if (onComplete != null) {
+                onComplete.onError(e.getError());
+            }
+        }
+    }
+
+    @Override
+    public void addChildListener(String cell, final ChildListener listener) {
+        Query query = this.getDatabaseRefForGeoHash(cell);
+        try {
+            query.on(Query.Event.CHILD_ADDED, new OnQuery() {
+                @Override
+                public void onComplete(DataSnapshot dataSnapshot, @Nullable String s) {
+                    GeoLocation location = getLocationValue(dataSnapshot);
+                    if (location != null) {
+                        try {
+                            listener.onChildAdded(dataSnapshot.name(), location);
+                        } catch (WebcomException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+
+                @Override
+                public void onCancel(WebcomError webcomError) {
+                    listener.onCancelled(webcomError);
+                }
+
+                @Override
+                public void onError(WebcomError webcomError) {
+                }
+            });
+            query.on(Query.Event.CHILD_CHANGED, new OnQuery() {
+                @Override
+                public void onComplete(DataSnapshot dataSnapshot, @Nullable String s) {
+                    GeoLocation location = getLocationValue(dataSnapshot);
+                    if (location != null) {
+                        try {
+                            listener.onChildChanged(dataSnapshot.name(), location);
+                        } catch (WebcomException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+
+                @Override
+                public void onCancel(WebcomError webcomError) {
+
+                }
+
+                @Override
+                public void onError(WebcomError webcomError) {
+
+                }
+            });
+            query.on(Query.Event.CHILD_REMOVED, new OnQuery() {
+                @Override
+                public void onComplete(DataSnapshot dataSnapshot, @Nullable String s) {
+                    try {
+                        listener.onChildRemoved(dataSnapshot.name());
+                    } catch (WebcomException e) {
+                        e.printStackTrace();
+                    }
+                }
+
+                @Override
+                public void onCancel(WebcomError webcomError) {
+
+                }
+
+                @Override
+                public void onError(WebcomError webcomError) {
+
+                }
+            });
+        } catch (WebcomException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Unregisters the listeners of a cell. Webcom removes every listener registered on the cell reference.
+     */
+    @Override
+    public void removeChildListener(String cell, ChildListener listener) {
+        try {
+            this.getDatabaseRefForGeoHash(cell).off();
+        } catch (WebcomException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void readCell(final String cell, final ValueListener listener) {
+        Utility.AddListenerForSingleValueEvent(this.getDatabaseRefForGeoHash(cell), new Utility.ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                Map<String, GeoLocation> locations = new HashMap<String, GeoLocation>();
+                try {
+                    if (dataSnapshot.value() != null) {
+                        for (Map.Entry<String, Object> entry : dataSnapshot.valueMap(Object.class).entrySet()) {
+                            GeoLocation location = getLocationValue(entry.getValue());
+                            if (location != null) {
+                                locations.put(entry.getKey(), location);
+                            }
+                        }
+                    }
+                } catch (WebcomException e) {
+                    e.printStackTrace();
+                }
+                listener.onDataChange(cell, locations);
+            }
+
+            @Override
+            public void onCancelled(WebcomError webcomError) {
+                listener.onCancelled(webcomError);
+            }
+        });
+    }
+}
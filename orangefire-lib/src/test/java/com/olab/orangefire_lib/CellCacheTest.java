@@ -0,0 +1,111 @@
+package com.olab.orangefire_lib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CellCacheTest {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = File.createTempFile("cellcache", null);
+        assertTrue(this.file.delete());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.file.delete();
+    }
+
+    @Test
+    public void savedCacheIsLoaded() throws Exception {
+        CellCache cache = new CellCache(100, DAY_MILLIS, this.file);
+        cache.put("u09tun", Collections.singletonMap("a", new GeoLocation(48.8566, 2.3522)));
+        cache.put("u09tuq", Collections.<String, GeoLocation>emptyMap());
+        cache.save();
+        CellCache loaded = new CellCache(100, DAY_MILLIS, this.file);
+        assertEquals(2, loaded.size());
+        assertEquals(1, loaded.getLocationCount());
+        Map<String, GeoLocation> cell = loaded.get("u09tun");
+        assertEquals(new GeoLocation(48.8566, 2.3522), cell.get("a"));
+    }
+
+    @Test
+    public void cellsAreKeptWithoutSave() throws Exception {
+        CellCache cache = new CellCache(100, DAY_MILLIS, this.file);
+        cache.put("u09tun", Collections.singletonMap("a", new GeoLocation(48.8566, 2.3522)));
+        cache.put("u09tuq", Collections.singletonMap("b", new GeoLocation(48.8566, 2.3522)));
+        cache.put("u09tun", Collections.singletonMap("c", new GeoLocation(48.8566, 2.3522)));
+        // the process is killed here
+        CellCache loaded = new CellCache(100, DAY_MILLIS, this.file);
+        assertEquals(2, loaded.size());
+        assertEquals(Collections.singleton("c"), loaded.get("u09tun").keySet());
+        assertEquals(Collections.singleton("b"), loaded.get("u09tuq").keySet());
+    }
+
+    @Test
+    public void fileIsCompactedAsCellsAreReplaced() throws Exception {
+        CellCache cache = new CellCache(100, DAY_MILLIS, this.file);
+        Map<String, GeoLocation> locations = new HashMap<String, GeoLocation>();
+        for (int i = 0; i < 50; i++) {
+            locations.put("key" + i, new GeoLocation(48.8566, 2.3522));
+        }
+        cache.put("u09tun", locations);
+        long length = this.file.length();
+        for (int i = 0; i < 1000; i++) {
+            cache.put("u09tun", locations);
+        }
+        // the file holds a few copies of the cell at most, not a thousand
+        assertTrue(this.file.length() < 50 * length);
+        assertEquals(locations, new CellCache(100, DAY_MILLIS, this.file).get("u09tun"));
+    }
+
+    @Test
+    public void truncatedFileKeepsTheCellsRead() throws Exception {
+        CellCache cache = new CellCache(100, DAY_MILLIS, this.file);
+        cache.put("u09tun", Collections.singletonMap("a", new GeoLocation(48.8566, 2.3522)));
+        cache.put("u09tuq", Collections.singletonMap("b", new GeoLocation(48.8566, 2.3522)));
+        RandomAccessFile truncated = new RandomAccessFile(this.file, "rw");
+        truncated.setLength(this.file.length() - 3);
+        truncated.close();
+        CellCache loaded = new CellCache(100, DAY_MILLIS, this.file);
+        assertEquals(1, loaded.size());
+        // cells appended after the partial one can be read
+        loaded.put("u09tuw", Collections.singletonMap("c", new GeoLocation(48.8566, 2.3522)));
+        CellCache reloaded = new CellCache(100, DAY_MILLIS, this.file);
+        assertNotNull(reloaded.get("u09tun"));
+        assertNotNull(reloaded.get("u09tuw"));
+    }
+
+    @Test
+    public void clearEmptiesTheFile() throws Exception {
+        CellCache cache = new CellCache(100, DAY_MILLIS, this.file);
+        cache.put("u09tun", Collections.singletonMap("a", new GeoLocation(48.8566, 2.3522)));
+        cache.clear();
+        assertEquals(0, new CellCache(100, DAY_MILLIS, this.file).size());
+    }
+
+    @Test
+    public void leastRecentlyUsedCellsAreEvicted() throws Exception {
+        CellCache cache = new CellCache(2, DAY_MILLIS, null);
+        cache.put("u09tun", Collections.singletonMap("a", new GeoLocation(48.8566, 2.3522)));
+        cache.put("u09tuq", Collections.singletonMap("b", new GeoLocation(48.8566, 2.3522)));
+        cache.get("u09tun");
+        cache.put("u09tuw", Collections.singletonMap("c", new GeoLocation(48.8566, 2.3522)));
+        assertNull(cache.get("u09tuq"));
+        assertNotNull(cache.get("u09tun"));
+        assertEquals(2, cache.getLocationCount());
+    }
+}
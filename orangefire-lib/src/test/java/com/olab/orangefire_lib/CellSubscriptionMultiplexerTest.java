@@ -0,0 +1,231 @@
+package com.olab.orangefire_lib;
+
+import com.olab.orangefire_lib.backend.GeoFireBackend;
+import com.orange.webcom.sdk.WebcomError;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CellSubscriptionMultiplexerTest {
+
+    private static final GeoLocation PARIS = new GeoLocation(48.8566, 2.3522);
+    private static final String CELL = GeoFire.cellOf(PARIS);
+    // in the cell of PARIS
+    private static final GeoLocation NEAR_PARIS = new GeoLocation(48.8567, 2.3523);
+
+    /**
+     * Records the events of a cell as strings such as "added key", in the order they were received.
+     */
+    private static class RecordingCellListener implements CellSubscriptionMultiplexer.CellListener {
+
+        private final List<String> events = new ArrayList<String>();
+
+        @Override
+        public synchronized void onChildAdded(String cell, String key, GeoLocation location) {
+            this.events.add("added " + key);
+        }
+
+        @Override
+        public synchronized void onChildChanged(String cell, String key, GeoLocation location) {
+            this.events.add("changed " + key);
+        }
+
+        @Override
+        public synchronized void onChildRemoved(String cell, String key) {
+            this.events.add("removed " + key);
+        }
+
+        @Override
+        public synchronized void onCellReady(String cell) {
+            this.events.add("ready");
+        }
+
+        @Override
+        public synchronized void onCellError(String cell, WebcomError webcomError) {
+            this.events.add("error");
+        }
+
+        synchronized List<String> takeEvents() {
+            List<String> events = new ArrayList<String>(this.events);
+            this.events.clear();
+            return events;
+        }
+    }
+
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    private TestBackend backend;
+    private CellSubscriptionMultiplexer multiplexer;
+
+    @Before
+    public void setUp() throws Exception {
+        // counts the cells subscribed in the backend
+        this.backend = new TestBackend() {
+            @Override
+            public void addChildListener(String cell, GeoFireBackend.ChildListener listener) {
+                subscriptions.incrementAndGet();
+                super.addChildListener(cell, listener);
+            }
+
+            @Override
+            public synchronized void removeChildListener(String cell, GeoFireBackend.ChildListener listener) {
+                subscriptions.decrementAndGet();
+                super.removeChildListener(cell, listener);
+            }
+        };
+        this.multiplexer = new CellSubscriptionMultiplexer(this.backend, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.backend.shutdown();
+    }
+
+    @Test
+    public void listenersOfACellShareOneSubscription() throws Exception {
+        RecordingCellListener first = new RecordingCellListener();
+        RecordingCellListener second = new RecordingCellListener();
+        this.multiplexer.attach(CELL, first);
+        this.multiplexer.attach(CELL, second);
+        assertEquals(1, this.subscriptions.get());
+        assertEquals(1, this.multiplexer.getSubscribedCellCount());
+
+        this.multiplexer.detach(CELL, first);
+        assertEquals(1, this.subscriptions.get());
+        // a listener detached twice does not release the subscription of the other one
+        this.multiplexer.detach(CELL, first);
+        assertEquals(1, this.subscriptions.get());
+
+        this.multiplexer.detach(CELL, second);
+        assertEquals(0, this.subscriptions.get());
+        assertEquals(0, this.multiplexer.getSubscribedCellCount());
+    }
+
+    @Test
+    public void keysAreReplayedToListenersAttachingLater() throws Exception {
+        this.backend.setLocation(CELL, "a", PARIS, null);
+        RecordingCellListener first = new RecordingCellListener();
+        this.multiplexer.attach(CELL, first);
+        this.backend.awaitEvents();
+        assertEquals(Arrays.asList("added a", "ready"), first.takeEvents());
+
+        // replayed before attach returns, without another download
+        long deliveredEvents = this.backend.getDeliveredEventCount();
+        RecordingCellListener second = new RecordingCellListener();
+        this.multiplexer.attach(CELL, second);
+        assertEquals(Arrays.asList("added a", "ready"), second.takeEvents());
+        this.backend.awaitEvents();
+        // the barrier read itself is the only event delivered
+        assertEquals(deliveredEvents + 1, this.backend.getDeliveredEventCount());
+
+        // later events reach both listeners
+        this.backend.removeLocation(CELL, "a", null);
+        this.backend.awaitEvents();
+        assertEquals(Collections.singletonList("removed a"), first.takeEvents());
+        assertEquals(Collections.singletonList("removed a"), second.takeEvents());
+    }
+
+    @Test
+    public void releasedCellsNoLongerReceiveEvents() throws Exception {
+        RecordingCellListener listener = new RecordingCellListener();
+        this.multiplexer.attach(CELL, listener);
+        this.backend.awaitEvents();
+        this.multiplexer.detach(CELL, listener);
+        listener.takeEvents();
+        this.backend.setLocation(CELL, "a", PARIS, null);
+        this.backend.awaitEvents();
+        assertEquals(Collections.<String>emptyList(), listener.takeEvents());
+    }
+
+    @Test
+    public void staleKeysOfTheCellCacheAreReconciled() throws Exception {
+        assertEquals(CELL, GeoFire.cellOf(NEAR_PARIS));
+        this.backend.setLocation(CELL, "a", PARIS, null);
+        this.backend.setLocation(CELL, "b", NEAR_PARIS, null);
+        CellCache cellCache = new CellCache(null);
+        Map<String, GeoLocation> cached = new HashMap<String, GeoLocation>();
+        cached.put("a", PARIS);
+        cached.put("b", PARIS);
+        cached.put("c", PARIS);
+        cellCache.put(CELL, cached);
+        this.multiplexer.setCellCache(cellCache);
+
+        CountDownLatch download = this.backend.holdEvents();
+        RecordingCellListener listener = new RecordingCellListener();
+        this.multiplexer.attach(CELL, listener);
+        // the cached keys are reported before the download
+        assertEquals(Arrays.asList("added a", "added b", "added c"), sorted(listener.takeEvents()));
+        for (String key : cached.keySet()) {
+            assertTrue(key, this.multiplexer.isStale(CELL, key));
+        }
+
+        download.countDown();
+        this.backend.awaitEvents();
+        List<String> events = listener.takeEvents();
+        assertTrue(events.toString(), events.contains("removed c"));
+        assertEquals("ready", events.get(events.size() - 1));
+        for (String key : cached.keySet()) {
+            assertFalse(key, this.multiplexer.isStale(CELL, key));
+        }
+        // the downloaded content replaces the cached one
+        assertEquals(this.backend.readCellNow(CELL), cellCache.get(CELL));
+    }
+
+    @Test
+    public void releasedCellsAreReplayedWhenSubscribedAgain() throws Exception {
+        this.multiplexer.setReleasedCells(new CellCache(1000, 60000, null));
+        this.backend.setLocation(CELL, "a", PARIS, null);
+        this.backend.setLocation(CELL, "b", NEAR_PARIS, null);
+        RecordingCellListener listener = new RecordingCellListener();
+        this.multiplexer.attach(CELL, listener);
+        this.backend.awaitEvents();
+        this.multiplexer.detach(CELL, listener);
+        listener.takeEvents();
+        this.backend.removeLocation(CELL, "b", null);
+
+        // panning back reports the keys of the released cell at once
+        CountDownLatch download = this.backend.holdEvents();
+        this.multiplexer.attach(CELL, listener);
+        assertEquals(Arrays.asList("added a", "added b"), sorted(listener.takeEvents()));
+        assertTrue(this.multiplexer.isStale(CELL, "b"));
+        download.countDown();
+        this.backend.awaitEvents();
+        List<String> events = listener.takeEvents();
+        assertTrue(events.toString(), events.contains("removed b"));
+        assertFalse(events.toString(), events.contains("removed a"));
+        assertEquals("ready", events.get(events.size() - 1));
+    }
+
+    @Test
+    public void cellsReleasedBeforeTheirDownloadAreNotReplayed() throws Exception {
+        this.multiplexer.setReleasedCells(new CellCache(1000, 60000, null));
+        this.backend.setLocation(CELL, "a", PARIS, null);
+        CountDownLatch download = this.backend.holdEvents();
+        RecordingCellListener listener = new RecordingCellListener();
+        this.multiplexer.attach(CELL, listener);
+        this.multiplexer.detach(CELL, listener);
+        download.countDown();
+        this.backend.awaitEvents();
+
+        this.multiplexer.attach(CELL, listener);
+        assertEquals(Collections.<String>emptyList(), listener.takeEvents());
+        this.backend.awaitEvents();
+        assertEquals(Arrays.asList("added a", "ready"), listener.takeEvents());
+    }
+
+    private static List<String> sorted(List<String> events) {
+        Collections.sort(events);
+        return events;
+    }
+}
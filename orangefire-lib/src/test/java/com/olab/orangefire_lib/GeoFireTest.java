@@ -0,0 +1,165 @@
+package com.olab.orangefire_lib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GeoFireTest {
+
+    private static final GeoLocation PARIS = new GeoLocation(48.8566, 2.3522);
+    private static final GeoLocation LYON = new GeoLocation(45.7640, 4.8357);
+
+    private TestBackend backend;
+    private GeoFire geoFire;
+
+    @Before
+    public void setUp() throws Exception {
+        this.backend = new TestBackend();
+        this.geoFire = new GeoFire(this.backend, EventExecutors.direct());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.geoFire.shutdown();
+        this.backend.shutdown();
+    }
+
+    @Test
+    public void invalidKeysAreRejected() throws Exception {
+        for (String key : new String[]{"a/b", "a.b", "$a", ""}) {
+            RecordingCompletion completion = new RecordingCompletion();
+            this.geoFire.addNewLocation(key, PARIS, completion);
+            assertNotNull(key, completion.awaitError());
+        }
+        assertEquals(0, this.backend.size());
+    }
+
+    @Test
+    public void invalidKeysDoNotJoinWriteBehindBatches() throws Exception {
+        WriteBehindBuffer buffer = this.geoFire.enableWriteBehind(60000, 1000);
+        RecordingCompletion invalid = new RecordingCompletion();
+        RecordingCompletion valid = new RecordingCompletion();
+        this.geoFire.addNewLocation("a/b", PARIS, invalid);
+        this.geoFire.addNewLocation("a", PARIS, valid);
+        assertNotNull(invalid.awaitError());
+        assertEquals(1, buffer.size());
+        buffer.flush();
+        assertNull(valid.awaitError());
+        assertEquals(1, this.backend.size());
+        assertEquals(PARIS, this.backend.readCellNow(GeoFire.cellOf(PARIS)).get("a"));
+    }
+
+    @Test
+    public void batchWritesValidKeysAtOnceAndReportsInvalidOnes() throws Exception {
+        Map<String, GeoLocation> locations = new HashMap<String, GeoLocation>();
+        locations.put("a", PARIS);
+        locations.put("b", LYON);
+        locations.put("c/d", PARIS);
+        RecordingBatchCompletion completion = new RecordingBatchCompletion();
+        this.geoFire.addNewLocations(locations, completion);
+        assertEquals(Collections.singleton("c/d"), completion.awaitFailures().keySet());
+        assertEquals(1, this.backend.getUpdateCount());
+        assertEquals(PARIS, this.backend.readCellNow(GeoFire.cellOf(PARIS)).get("a"));
+        assertEquals(LYON, this.backend.readCellNow(GeoFire.cellOf(LYON)).get("b"));
+        assertEquals(GeoFire.cellOf(LYON), this.geoFire.getKeyCellIndex().getCell("b"));
+
+        // moving a key across cells removes it from its previous cell in the same write
+        locations.clear();
+        locations.put("a", LYON);
+        completion = new RecordingBatchCompletion();
+        this.geoFire.addNewLocations(locations, completion);
+        assertTrue(completion.awaitFailures().isEmpty());
+        assertEquals(2, this.backend.getUpdateCount());
+        assertNull(this.backend.readCellNow(GeoFire.cellOf(PARIS)).get("a"));
+        assertEquals(2, this.backend.size());
+    }
+
+    @Test
+    public void batchRemovalReportsUnknownAndInvalidKeys() throws Exception {
+        RecordingCompletion written = new RecordingCompletion();
+        this.geoFire.addNewLocation("a", PARIS);
+        this.geoFire.addNewLocation("b", LYON, written);
+        assertNull(written.awaitError());
+        RecordingBatchCompletion completion = new RecordingBatchCompletion();
+        this.geoFire.removeLocations(Arrays.asList("a", "b", "unknown", "c/d"), completion);
+        assertEquals(new HashSet<String>(Arrays.asList("unknown", "c/d")), completion.awaitFailures().keySet());
+        this.backend.awaitEvents();
+        assertEquals(0, this.backend.size());
+        assertEquals(0, this.geoFire.getKeyCellIndex().size());
+    }
+
+    @Test
+    public void batchRemovalByGeohashRemovesKeysWrittenElsewhere() throws Exception {
+        this.backend.setLocation(GeoFire.cellOf(PARIS), "a", PARIS, null);
+        Map<String, String> geohashesByKey = new HashMap<String, String>();
+        geohashesByKey.put("a", GeoFire.cellOf(PARIS));
+        RecordingBatchCompletion completion = new RecordingBatchCompletion();
+        this.geoFire.removeLocations(geohashesByKey, completion);
+        assertTrue(completion.awaitFailures().isEmpty());
+        assertEquals(0, this.backend.size());
+    }
+
+    @Test
+    public void failedWritesKeepKeysInTheirCellInTheIndex() throws Exception {
+        RecordingCompletion written = new RecordingCompletion();
+        this.geoFire.addNewLocation("a", PARIS, written);
+        assertNull(written.awaitError());
+        String cell = GeoFire.cellOf(PARIS);
+        this.backend.setFailing(true);
+
+        RecordingCompletion move = new RecordingCompletion();
+        this.geoFire.addNewLocation("a", LYON, move);
+        assertNotNull(move.awaitError());
+        assertEquals(cell, this.geoFire.getKeyCellIndex().getCell("a"));
+
+        RecordingBatchCompletion batchMove = new RecordingBatchCompletion();
+        this.geoFire.addNewLocations(Collections.singletonMap("a", LYON), batchMove);
+        assertEquals(Collections.singleton("a"), batchMove.awaitFailures().keySet());
+        assertEquals(cell, this.geoFire.getKeyCellIndex().getCell("a"));
+
+        RecordingCompletion removal = new RecordingCompletion();
+        this.geoFire.removeLocation("a", removal);
+        assertNotNull(removal.awaitError());
+        assertEquals(cell, this.geoFire.getKeyCellIndex().getCell("a"));
+
+        RecordingBatchCompletion batchRemoval = new RecordingBatchCompletion();
+        this.geoFire.removeLocations(Collections.singleton("a"), batchRemoval);
+        assertEquals(Collections.singleton("a"), batchRemoval.awaitFailures().keySet());
+        assertEquals(cell, this.geoFire.getKeyCellIndex().getCell("a"));
+
+        // the index still finds the key once the backend is back
+        this.backend.setFailing(false);
+        RecordingCompletion retry = new RecordingCompletion();
+        this.geoFire.addNewLocation("a", LYON, retry);
+        assertNull(retry.awaitError());
+        assertNull(this.backend.readCellNow(cell).get("a"));
+        assertEquals(LYON, this.backend.readCellNow(GeoFire.cellOf(LYON)).get("a"));
+    }
+
+    @Test
+    public void failedWritesAtSeveralPrecisionsKeepKeysInTheirCellInTheIndex() throws Exception {
+        this.geoFire.setStoragePrecisions(4, 5, 6);
+        RecordingCompletion written = new RecordingCompletion();
+        this.geoFire.addNewLocation("a", PARIS, written);
+        assertNull(written.awaitError());
+        this.backend.setFailing(true);
+        RecordingCompletion removal = new RecordingCompletion();
+        this.geoFire.removeLocation("a", removal);
+        assertNotNull(removal.awaitError());
+        assertEquals(GeoFire.cellOf(PARIS), this.geoFire.getKeyCellIndex().getCell("a"));
+
+        this.backend.setFailing(false);
+        removal = new RecordingCompletion();
+        this.geoFire.removeLocation("a", removal);
+        assertNull(removal.awaitError());
+        assertEquals(0, this.backend.size());
+    }
+}
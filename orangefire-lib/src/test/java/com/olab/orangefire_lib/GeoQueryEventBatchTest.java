@@ -0,0 +1,68 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.WebcomError;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GeoQueryEventBatchTest {
+
+    private static final GeoLocation PARIS = new GeoLocation(48.8566, 2.3522);
+    private static final GeoLocation NEAR_PARIS = new GeoLocation(48.8567, 2.3523);
+
+    @Test
+    public void keyEnteringAndExitingIsNotReported() throws Exception {
+        GeoQueryEventBatch batch = new GeoQueryEventBatch();
+        batch.keyEntered("a", PARIS);
+        batch.keyMoved("a", NEAR_PARIS);
+        batch.keyExited("a");
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void keyExitingAndEnteringIsReportedAsMoved() throws Exception {
+        GeoQueryEventBatch batch = new GeoQueryEventBatch();
+        batch.keyExited("a");
+        batch.keyEntered("a", NEAR_PARIS);
+        assertEquals(Collections.singletonList("moved [a]"), deliver(batch));
+    }
+
+    @Test
+    public void keyEnteringAndMovingIsReportedAsEnteredOnce() throws Exception {
+        GeoQueryEventBatch batch = new GeoQueryEventBatch();
+        final GeoLocation[] entered = new GeoLocation[1];
+        batch.keyEntered("a", PARIS);
+        batch.keyMoved("a", NEAR_PARIS);
+        batch.deliverTo(new RecordingBatchListener() {
+            @Override
+            public synchronized void onKeysEntered(Map<String, GeoLocation> locations) {
+                entered[0] = locations.get("a");
+            }
+        });
+        assertEquals(NEAR_PARIS, entered[0]);
+    }
+
+    @Test
+    public void batchIsDeliveredInOrder() throws Exception {
+        GeoQueryEventBatch batch = new GeoQueryEventBatch();
+        batch.ready();
+        batch.keyExited("c");
+        batch.error(new WebcomError("Error", "Cell not readable"));
+        batch.keyMoved("b", NEAR_PARIS);
+        batch.keyEntered("a", PARIS);
+        batch.keyEntered("d", PARIS);
+        assertEquals(Arrays.asList("entered [a, d]", "moved [b]", "exited [c]", "error", "ready"), deliver(batch));
+    }
+
+    private static List<String> deliver(GeoQueryEventBatch batch) {
+        RecordingBatchListener listener = new RecordingBatchListener();
+        batch.deliverTo(listener);
+        return listener.takeDispatches();
+    }
+}
@@ -0,0 +1,175 @@
+package com.olab.orangefire_lib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class GeoQueryTest {
+
+    private static final GeoLocation PARIS = new GeoLocation(48.8566, 2.3522);
+    // in the cell of PARIS
+    private static final GeoLocation NEAR_PARIS = new GeoLocation(48.8567, 2.3523);
+
+    private TestBackend backend;
+    private GeoFire geoFire;
+
+    @Before
+    public void setUp() throws Exception {
+        this.backend = new TestBackend();
+        this.geoFire = new GeoFire(this.backend, EventExecutors.direct());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.geoFire.shutdown();
+        this.backend.shutdown();
+    }
+
+    @Test
+    public void moveAcrossCellsIsReportedAsMove() throws Exception {
+        Random random = new Random(42);
+        GeoLocation location = PARIS;
+        this.geoFire.addNewLocation("a", location);
+        this.backend.awaitEvents();
+        GeoQuery query = this.geoFire.queryAtLocation(PARIS, 5);
+        RecordingListener listener = new RecordingListener();
+        query.addGeoQueryEventListener(listener);
+        this.backend.awaitEvents();
+        assertEquals(Arrays.asList("entered a", "ready"), listener.takeEvents());
+        for (int i = 0; i < 40; i++) {
+            GeoLocation next;
+            do {
+                next = new GeoLocation(PARIS.latitude + (random.nextDouble() - 0.5) * 0.06,
+                        PARIS.longitude + (random.nextDouble() - 0.5) * 0.08);
+            } while (GeoFire.cellOf(next).equals(GeoFire.cellOf(location)));
+            if (i % 2 == 0) {
+                this.geoFire.addNewLocation("a", next);
+            } else {
+                query.UpdatetLocationForKey("a", next, null);
+            }
+            this.backend.awaitEvents();
+            assertEquals("move " + i, Collections.singletonList("moved a"), listener.takeEvents());
+            assertEquals(next, query.getLocationOfKey("a"));
+            location = next;
+        }
+        assertEquals(1, this.backend.size());
+    }
+
+    @Test
+    public void cachedKeysAreStaleUntilTheirCellIsDownloaded() throws Exception {
+        String cell = GeoFire.cellOf(PARIS);
+        assertEquals(cell, GeoFire.cellOf(NEAR_PARIS));
+        this.geoFire.addNewLocation("a", PARIS);
+        this.geoFire.addNewLocation("b", NEAR_PARIS);
+        this.backend.awaitEvents();
+        CellCache cellCache = new CellCache(null);
+        Map<String, GeoLocation> cached = new HashMap<String, GeoLocation>();
+        cached.put("a", PARIS);
+        cached.put("b", PARIS);
+        cached.put("c", PARIS);
+        cellCache.put(cell, cached);
+        this.geoFire.setCellCache(cellCache);
+
+        CountDownLatch download = this.backend.holdEvents();
+        GeoQuery query = this.geoFire.queryAtLocation(PARIS, 1);
+        RecordingListener listener = new RecordingListener();
+        query.addGeoQueryEventListener(listener);
+        List<String> events = listener.takeEvents();
+        Collections.sort(events);
+        assertEquals(Arrays.asList("entered a", "entered b", "entered c"), events);
+        assertTrue(query.isKeyStale("a"));
+        assertTrue(query.isKeyStale("c"));
+
+        download.countDown();
+        this.backend.awaitEvents();
+        events = listener.takeEvents();
+        assertTrue(events.toString(), events.contains("moved b"));
+        assertTrue(events.toString(), events.contains("exited c"));
+        assertFalse(events.toString(), events.contains("exited a"));
+        assertEquals("ready", events.get(events.size() - 1));
+        assertFalse(query.isKeyStale("a"));
+        assertFalse(query.isKeyStale("b"));
+        assertEquals(NEAR_PARIS, query.getLocationOfKey("b"));
+        assertNull(query.getLocationOfKey("c"));
+    }
+
+    @Test
+    public void changesOfCenterAreCoalescedIntoOnePlan() throws Exception {
+        GeoLocation far = new GeoLocation(PARIS.latitude, PARIS.longitude + 0.3);
+        this.geoFire.addNewLocation("far", far);
+        GeoQuery query = this.geoFire.queryAtLocation(PARIS, 1);
+        query.setReplanDelay(200, 5000);
+        RecordingListener listener = new RecordingListener();
+        query.addGeoQueryEventListener(listener);
+        this.backend.awaitEvents();
+        assertEquals(Collections.singletonList("ready"), listener.takeEvents());
+
+        long plans = planCount();
+        for (int i = 1; i <= 10; i++) {
+            query.setCenter(new GeoLocation(PARIS.latitude, PARIS.longitude + 0.03 * i));
+        }
+        assertEquals(plans, planCount());
+        awaitEvent(listener, "entered far");
+        // only the last center was planned
+        assertEquals(plans + 1, planCount());
+    }
+
+    @Test
+    public void continuousChangesArePlannedAfterTheMaximalDelay() throws Exception {
+        GeoQuery query = this.geoFire.queryAtLocation(PARIS, 1);
+        query.setReplanDelay(200, 300);
+        query.addGeoQueryEventListener(new RecordingListener());
+        long plans = planCount();
+        // a change every 50 ms never leaves a quiet period
+        for (int i = 1; i <= 20; i++) {
+            query.setCenter(new GeoLocation(PARIS.latitude, PARIS.longitude + 0.001 * i));
+            Thread.sleep(50);
+        }
+        long replans = planCount() - plans;
+        assertTrue("re-planned " + replans + " times", replans >= 2 && replans < 20);
+    }
+
+    @Test
+    public void keysOfAPlanAreDeliveredInOneBatch() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            this.geoFire.addNewLocation("k" + i, new GeoLocation(PARIS.latitude + 0.001 * i, PARIS.longitude));
+        }
+        // a first query downloads the cells, so the second one gets them replayed while it is planned
+        GeoQuery first = this.geoFire.queryAtLocation(PARIS, 2);
+        first.addGeoQueryEventListener(new RecordingListener());
+        this.backend.awaitEvents();
+        GeoQuery second = this.geoFire.queryAtLocation(PARIS, 2);
+        RecordingBatchListener listener = new RecordingBatchListener();
+        second.addGeoQueryEventListener(listener);
+        this.backend.awaitEvents();
+        assertEquals(Arrays.asList("entered [k0, k1, k2, k3, k4]", "ready"), listener.takeDispatches());
+
+    }
+
+    private long planCount() {
+        return this.geoFire.getQueryPlanCache().getHitCount() + this.geoFire.getQueryPlanCache().getMissCount();
+    }
+
+    private void awaitEvent(RecordingListener listener, String event) throws InterruptedException {
+        List<String> events = new ArrayList<String>();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!events.contains(event)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError(event + " not received, received " + events);
+            }
+            Thread.sleep(10);
+            events.addAll(listener.takeEvents());
+        }
+    }
+}
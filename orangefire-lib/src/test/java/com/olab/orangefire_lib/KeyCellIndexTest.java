@@ -0,0 +1,50 @@
+package com.olab.orangefire_lib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+public class KeyCellIndexTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = File.createTempFile("keycellindex", null);
+        assertTrue(this.file.delete());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.file.delete();
+    }
+
+    @Test
+    public void savedIndexIsLoadedInOrderOfUse() throws Exception {
+        KeyCellIndex index = new KeyCellIndex(2, this.file);
+        index.put("a", "u09tun");
+        index.put("b", "u09tuq");
+        index.getCell("a");
+        index.save();
+        KeyCellIndex loaded = new KeyCellIndex(2, this.file);
+        assertEquals(2, loaded.size());
+        assertEquals("u09tun", loaded.getCell("a"));
+        // b is the least recently used key and goes first
+        loaded.put("c", "u09tuw");
+        assertNull(loaded.getCell("b"));
+        assertEquals("u09tun", loaded.getCell("a"));
+    }
+
+    @Test
+    public void unreadableFileIsIgnored() throws Exception {
+        FileOutputStream out = new FileOutputStream(this.file);
+        out.write(new byte[]{0, 0, 0, 42, 1});
+        out.close();
+        assertEquals(0, new KeyCellIndex(10, this.file).size());
+    }
+}
@@ -0,0 +1,147 @@
+package com.olab.orangefire_lib;
+
+import com.olab.orangefire_lib.backend.GeoFireBackend;
+import com.orange.webcom.sdk.WebcomError;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NearestQueryTest {
+
+    private static final GeoLocation PARIS = new GeoLocation(48.8566, 2.3522);
+
+    private static class RecordingCallback implements NearestKeysCallback {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile List<NearbyKey> keys;
+        private volatile WebcomError error;
+        private volatile String threadName;
+
+        @Override
+        public void onNearestKeys(List<NearbyKey> keys) {
+            this.keys = keys;
+            this.threadName = Thread.currentThread().getName();
+            this.done.countDown();
+        }
+
+        @Override
+        public void onCancelled(WebcomError webcomError) {
+            this.error = webcomError;
+            this.threadName = Thread.currentThread().getName();
+            this.done.countDown();
+        }
+
+        List<String> awaitKeys() throws InterruptedException {
+            await();
+            assertNull(this.error);
+            List<String> keys = new ArrayList<String>();
+            for (NearbyKey key : this.keys) {
+                keys.add(key.key);
+            }
+            return keys;
+        }
+
+        WebcomError awaitError() throws InterruptedException {
+            await();
+            return this.error;
+        }
+
+        private void await() throws InterruptedException {
+            if (!this.done.await(10, TimeUnit.SECONDS)) {
+                throw new AssertionError("Nearest keys query not done");
+            }
+        }
+    }
+
+    private ExecutorService eventExecutor;
+    // cell whose reads are dropped while set
+    private volatile String droppedCell;
+    private TestBackend backend;
+    private GeoFire geoFire;
+
+    @Before
+    public void setUp() throws Exception {
+        this.eventExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "events");
+            }
+        });
+        this.backend = new TestBackend() {
+            @Override
+            public void readCell(String cell, GeoFireBackend.ValueListener listener) {
+                if (!cell.equals(droppedCell)) {
+                    super.readCell(cell, listener);
+                }
+            }
+        };
+        this.geoFire = new GeoFire(this.backend, this.eventExecutor);
+        // keys north of Paris, at about 0.1, 1, 6, 22 and 111 km
+        double[] latitudeOffsets = {0.001, 0.01, 0.05, 0.2, 1.0};
+        String[] keys = {"a", "b", "c", "d", "e"};
+        for (int i = 0; i < keys.length; i++) {
+            RecordingCompletion completion = new RecordingCompletion();
+            this.geoFire.addNewLocation(keys[i],
+                    new GeoLocation(PARIS.latitude + latitudeOffsets[i], PARIS.longitude), completion);
+            assertNull(completion.awaitError());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.geoFire.shutdown();
+        this.backend.shutdown();
+        this.eventExecutor.shutdown();
+    }
+
+    @Test
+    public void nearestKeysAreSortedByDistance() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        this.geoFire.queryNearest(PARIS, 3, callback);
+        assertEquals(Arrays.asList("a", "b", "c"), callback.awaitKeys());
+    }
+
+    @Test
+    public void keysBeyondTheMaximalDistanceAreIgnored() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        this.geoFire.queryNearest(PARIS, 5, 10, callback);
+        assertEquals(Arrays.asList("a", "b", "c"), callback.awaitKeys());
+    }
+
+    @Test
+    public void queryExceedingTheCellBudgetFails() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        this.geoFire.queryNearest(PARIS, 5, 50, 4, callback);
+        assertNotNull(callback.awaitError());
+    }
+
+    @Test
+    public void callbackRunsOnTheEventExecutor() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        this.geoFire.queryNearest(PARIS, 1, callback);
+        assertEquals(Arrays.asList("a"), callback.awaitKeys());
+        assertEquals("events", callback.threadName);
+    }
+
+    @Test
+    public void droppedReadTimesOut() throws Exception {
+        this.droppedCell = GeoFire.cellOf(PARIS);
+        this.geoFire.setNearestTimeout(100);
+        RecordingCallback callback = new RecordingCallback();
+        this.geoFire.queryNearest(PARIS, 1, callback);
+        assertNotNull(callback.awaitError());
+        assertEquals("events", callback.threadName);
+    }
+}
@@ -0,0 +1,32 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch completion listener whose tests can wait for the outcome of a batch.
+ */
+class RecordingBatchCompletion implements BatchCompletionListener {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Map<String, WebcomError> failures;
+
+    @Override
+    public void onComplete(Map<String, WebcomError> failures) {
+        this.failures = failures;
+        this.done.countDown();
+    }
+
+    /**
+     * @return The keys of the batch that were not written.
+     */
+    Map<String, WebcomError> awaitFailures() throws InterruptedException {
+        if (!this.done.await(10, TimeUnit.SECONDS)) {
+            throw new AssertionError("Batch not completed");
+        }
+        return this.failures;
+    }
+}
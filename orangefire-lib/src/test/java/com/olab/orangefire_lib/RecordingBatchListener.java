@@ -0,0 +1,51 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Records the dispatches of a batch listener as strings such as "entered [a, b]", keys sorted, in the order they were
+ * received.
+ */
+class RecordingBatchListener implements GeoQueryBatchEventListener {
+
+    private final List<String> dispatches = new ArrayList<String>();
+
+    @Override
+    public synchronized void onKeysEntered(Map<String, GeoLocation> locations) {
+        this.dispatches.add("entered " + new TreeSet<String>(locations.keySet()));
+    }
+
+    @Override
+    public synchronized void onKeysMoved(Map<String, GeoLocation> locations) {
+        this.dispatches.add("moved " + new TreeSet<String>(locations.keySet()));
+    }
+
+    @Override
+    public synchronized void onKeysExited(List<String> keys) {
+        this.dispatches.add("exited " + new TreeSet<String>(keys));
+    }
+
+    @Override
+    public synchronized void onGeoQueryReady() {
+        this.dispatches.add("ready");
+    }
+
+    @Override
+    public synchronized void onGeoQueryError(WebcomError webcomError) {
+        this.dispatches.add("error");
+    }
+
+    /**
+     * @return The dispatches received since the last call.
+     */
+    synchronized List<String> takeDispatches() {
+        List<String> dispatches = new ArrayList<String>(this.dispatches);
+        this.dispatches.clear();
+        return dispatches;
+    }
+}
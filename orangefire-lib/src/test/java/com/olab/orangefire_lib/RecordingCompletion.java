@@ -0,0 +1,37 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.OnComplete;
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completion listener whose tests can wait for the outcome of a write.
+ */
+class RecordingCompletion implements OnComplete {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile WebcomError error;
+
+    @Override
+    public void onComplete() {
+        this.done.countDown();
+    }
+
+    @Override
+    public void onError(WebcomError webcomError) {
+        this.error = webcomError;
+        this.done.countDown();
+    }
+
+    /**
+     * @return The error of the write, or null if it succeeded.
+     */
+    WebcomError awaitError() throws InterruptedException {
+        if (!this.done.await(10, TimeUnit.SECONDS)) {
+            throw new AssertionError("Write not completed");
+        }
+        return this.error;
+    }
+}
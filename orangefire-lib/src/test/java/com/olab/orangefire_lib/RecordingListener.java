@@ -0,0 +1,48 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the events of a query as strings such as "entered key", in the order they were received.
+ */
+class RecordingListener implements GeoQueryEventListener {
+
+    private final List<String> events = new ArrayList<String>();
+
+    @Override
+    public synchronized void onKeyEntered(String key, GeoLocation location) {
+        this.events.add("entered " + key);
+    }
+
+    @Override
+    public synchronized void onKeyExited(String key) {
+        this.events.add("exited " + key);
+    }
+
+    @Override
+    public synchronized void onKeyMoved(String key, GeoLocation location) {
+        this.events.add("moved " + key);
+    }
+
+    @Override
+    public synchronized void onGeoQueryReady() {
+        this.events.add("ready");
+    }
+
+    @Override
+    public synchronized void onGeoQueryError(WebcomError webcomError) {
+        this.events.add("error");
+    }
+
+    /**
+     * @return The events received since the last call.
+     */
+    synchronized List<String> takeEvents() {
+        List<String> events = new ArrayList<String>(this.events);
+        this.events.clear();
+        return events;
+    }
+}
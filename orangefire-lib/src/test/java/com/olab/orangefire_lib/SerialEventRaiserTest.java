@@ -0,0 +1,140 @@
+package com.olab.orangefire_lib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SerialEventRaiserTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void eventsRunOneAtATimeInOrder() throws Exception {
+        SerialEventRaiser raiser = new SerialEventRaiser(this.executor);
+        final List<Integer> events = new ArrayList<Integer>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            final int event = i;
+            raiser.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    if (running.incrementAndGet() > 1) {
+                        overlapped.set(true);
+                    }
+                    // not synchronized, the raiser runs one event at a time
+                    events.add(event);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertFalse(overlapped.get());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), events.get(i));
+        }
+    }
+
+    @Test
+    public void listenersRunInParallel() throws Exception {
+        final CountDownLatch bothRunning = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable event = new Runnable() {
+            @Override
+            public void run() {
+                bothRunning.countDown();
+                try {
+                    // waits for the event of the other raiser, which must not be queued behind this one
+                    if (bothRunning.await(10, TimeUnit.SECONDS)) {
+                        done.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        new SerialEventRaiser(this.executor).raiseEvent(event);
+        new SerialEventRaiser(this.executor).raiseEvent(event);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failingEventDoesNotStopTheFollowingOnes() throws Exception {
+        SerialEventRaiser raiser = new SerialEventRaiser(this.executor);
+        final CountDownLatch done = new CountDownLatch(1);
+        raiser.raiseEvent(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Listener failure");
+            }
+        });
+        raiser.raiseEvent(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectedDrainIsStartedAgainByTheNextEvent() throws Exception {
+        final AtomicBoolean reject = new AtomicBoolean(true);
+        SerialEventRaiser raiser = new SerialEventRaiser(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (reject.get()) {
+                    throw new RejectedExecutionException("Executor full");
+                }
+                command.run();
+            }
+        });
+        final List<String> events = new ArrayList<String>();
+        try {
+            raiser.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    events.add("first");
+                }
+            });
+            fail("Rejection not reported");
+        } catch (RejectedExecutionException e) {
+            // expected, the event stays queued
+        }
+        reject.set(false);
+        raiser.raiseEvent(new Runnable() {
+            @Override
+            public void run() {
+                events.add("second");
+            }
+        });
+        assertEquals(2, events.size());
+        assertEquals("first", events.get(0));
+        assertEquals("second", events.get(1));
+    }
+}
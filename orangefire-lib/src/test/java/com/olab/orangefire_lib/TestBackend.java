@@ -0,0 +1,122 @@
+package com.olab.orangefire_lib;
+
+import com.olab.orangefire_lib.backend.GeoFireBackend;
+import com.olab.orangefire_lib.backend.InMemoryBackend;
+import com.orange.webcom.sdk.OnComplete;
+import com.orange.webcom.sdk.WebcomError;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InMemoryBackend whose tests can wait for the events delivered so far.
+ */
+class TestBackend extends InMemoryBackend {
+
+    private final AtomicInteger updates = new AtomicInteger();
+    // fails the writes while set
+    private volatile boolean failing;
+
+    @Override
+    public void setLocation(String cell, String key, GeoLocation location, OnComplete onComplete) {
+        if (!fail(onComplete)) {
+            super.setLocation(cell, key, location, onComplete);
+        }
+    }
+
+    @Override
+    public void removeLocation(String cell, String key, OnComplete onComplete) {
+        if (!fail(onComplete)) {
+            super.removeLocation(cell, key, onComplete);
+        }
+    }
+
+    @Override
+    public void updateCells(Map<String, Map<String, GeoLocation>> updates, OnComplete onComplete) {
+        this.updates.incrementAndGet();
+        if (!fail(onComplete)) {
+            super.updateCells(updates, onComplete);
+        }
+    }
+
+    /**
+     * Makes the following writes fail without changing any cell, or succeed again.
+     */
+    void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    private boolean fail(OnComplete onComplete) {
+        if (!this.failing) {
+            return false;
+        }
+        if (onComplete != null) {
+            onComplete.onError(new WebcomError("Disconnected", "Backend unavailable"));
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of calls to updateCells so far.
+     */
+    int getUpdateCount() {
+        return this.updates.get();
+    }
+
+    /**
+     * Waits until the events and completions queued before this call are delivered, they are delivered in order on a
+     * single thread.
+     */
+    void awaitEvents() throws InterruptedException {
+        readCellNow("~");
+    }
+
+    /**
+     * Holds back the delivery of the events queued after this call until the returned latch is counted down.
+     */
+    CountDownLatch holdEvents() {
+        final CountDownLatch release = new CountDownLatch(1);
+        readCell("~", new GeoFireBackend.ValueListener() {
+            @Override
+            public void onDataChange(String cell, Map<String, GeoLocation> locations) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onCancelled(WebcomError webcomError) {
+            }
+        });
+        return release;
+    }
+
+    /**
+     * Reads a cell once the events queued before this call are delivered.
+     */
+    Map<String, GeoLocation> readCellNow(String cell) throws InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final Map<String, GeoLocation> content = new HashMap<String, GeoLocation>();
+        readCell(cell, new GeoFireBackend.ValueListener() {
+            @Override
+            public void onDataChange(String cell, Map<String, GeoLocation> locations) {
+                content.putAll(locations);
+                delivered.countDown();
+            }
+
+            @Override
+            public void onCancelled(WebcomError webcomError) {
+                delivered.countDown();
+            }
+        });
+        if (!delivered.await(10, TimeUnit.SECONDS)) {
+            throw new AssertionError("Backend events not delivered");
+        }
+        return content;
+    }
+}
@@ -0,0 +1,170 @@
+package com.olab.orangefire_lib;
+
+import com.orange.webcom.sdk.OnComplete;
+import com.orange.webcom.sdk.WebcomError;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindBufferTest {
+
+    private static final GeoLocation FIRST = new GeoLocation(48.8566, 2.3522);
+    private static final GeoLocation SECOND = new GeoLocation(48.8584, 2.2945);
+
+    private final CountDownLatch firstUpdateSent = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstUpdate = new CountDownLatch(1);
+    // fails the batch writes while set
+    private volatile boolean failUpdates;
+    private TestBackend backend;
+    private GeoFire geoFire;
+
+    @Before
+    public void setUp() throws Exception {
+        // the first batch write blocks until the test releases it
+        this.backend = new TestBackend() {
+            @Override
+            public void updateCells(Map<String, Map<String, GeoLocation>> updates, OnComplete onComplete) {
+                if (firstUpdateSent.getCount() > 0) {
+                    firstUpdateSent.countDown();
+                    try {
+                        releaseFirstUpdate.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (failUpdates) {
+                    onComplete.onError(new WebcomError("Disconnected", "Backend unavailable"));
+                    return;
+                }
+                super.updateCells(updates, onComplete);
+            }
+        };
+        this.geoFire = new GeoFire(this.backend, EventExecutors.direct());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        releaseFirstUpdate.countDown();
+        this.geoFire.shutdown();
+        this.backend.shutdown();
+    }
+
+    @Test
+    public void concurrentFlushesSendInOrder() throws Exception {
+        final WriteBehindBuffer buffer = this.geoFire.enableWriteBehind(60000, 1000);
+        this.geoFire.addNewLocation("a", FIRST);
+        Thread firstFlush = flushInBackground(buffer);
+        assertTrue(this.firstUpdateSent.await(10, TimeUnit.SECONDS));
+        this.geoFire.addNewLocation("a", SECOND);
+        Thread secondFlush = flushInBackground(buffer);
+        // the second flush must wait for the first one instead of overtaking it
+        secondFlush.join(200);
+        this.releaseFirstUpdate.countDown();
+        firstFlush.join();
+        secondFlush.join();
+        // the key left the cell of its first location
+        assertNull(this.backend.readCellNow(GeoFire.cellOf(FIRST)).get("a"));
+        assertEquals(SECOND, this.backend.readCellNow(GeoFire.cellOf(SECOND)).get("a"));
+        assertEquals(2, buffer.getFlushCount());
+    }
+
+    @Test
+    public void failedFlushKeepsKeysInTheirPreviousCell() throws Exception {
+        // a first write not buffered, so the key cell index knows the key
+        RecordingCompletion first = new RecordingCompletion();
+        this.releaseFirstUpdate.countDown();
+        this.geoFire.addNewLocation("a", FIRST, first);
+        assertNull(first.awaitError());
+        WriteBehindBuffer buffer = this.geoFire.enableWriteBehind(60000, 1000);
+        RecordingCompletion second = new RecordingCompletion();
+        this.geoFire.addNewLocation("a", SECOND, second);
+        this.failUpdates = true;
+        buffer.flush();
+        assertNotNull(second.awaitError());
+        assertEquals(GeoFire.cellOf(FIRST), this.geoFire.getKeyCellIndex().getCell("a"));
+        // the next write of the key leaves the cell the key is really in
+        this.failUpdates = false;
+        RecordingCompletion third = new RecordingCompletion();
+        this.geoFire.addNewLocation("a", SECOND, third);
+        buffer.flush();
+        assertNull(third.awaitError());
+        assertNull(this.backend.readCellNow(GeoFire.cellOf(FIRST)).get("a"));
+        assertEquals(SECOND, this.backend.readCellNow(GeoFire.cellOf(SECOND)).get("a"));
+    }
+
+    @Test
+    public void onlyTheLatestLocationOfAKeyIsSent() throws Exception {
+        this.releaseFirstUpdate.countDown();
+        WriteBehindBuffer buffer = this.geoFire.enableWriteBehind(60000, 1000);
+        RecordingCompletion[] completions = new RecordingCompletion[3];
+        for (int i = 0; i < completions.length; i++) {
+            completions[i] = new RecordingCompletion();
+        }
+        this.geoFire.addNewLocation("a", FIRST, completions[0]);
+        this.geoFire.addNewLocation("a", SECOND, completions[1]);
+        this.geoFire.addNewLocation("b", FIRST, completions[2]);
+        assertEquals(2, buffer.size());
+        assertEquals(1, buffer.getSupersededWriteCount());
+        buffer.flush();
+        // the superseded location completes with the location replacing it
+        for (RecordingCompletion completion : completions) {
+            assertNull(completion.awaitError());
+        }
+        assertEquals(0, buffer.size());
+        assertEquals(2, buffer.getFlushedWriteCount());
+        assertEquals(1, buffer.getFlushCount());
+        assertEquals(1, this.backend.getUpdateCount());
+        assertNull(this.backend.readCellNow(GeoFire.cellOf(FIRST)).get("a"));
+        assertEquals(SECOND, this.backend.readCellNow(GeoFire.cellOf(SECOND)).get("a"));
+    }
+
+    @Test
+    public void fullBufferAndElapsedIntervalFlush() throws Exception {
+        this.releaseFirstUpdate.countDown();
+        WriteBehindBuffer buffer = this.geoFire.enableWriteBehind(60000, 2);
+        RecordingCompletion completion = new RecordingCompletion();
+        this.geoFire.addNewLocation("a", FIRST);
+        this.geoFire.addNewLocation("b", SECOND, completion);
+        assertNull(completion.awaitError());
+        assertEquals(1, buffer.getFlushCount());
+
+        buffer = this.geoFire.enableWriteBehind(50, 1000);
+        completion = new RecordingCompletion();
+        this.geoFire.addNewLocation("c", FIRST, completion);
+        assertNull(completion.awaitError());
+        assertEquals(1, buffer.getFlushCount());
+    }
+
+    @Test
+    public void removalDropsTheBufferedLocation() throws Exception {
+        this.releaseFirstUpdate.countDown();
+        WriteBehindBuffer buffer = this.geoFire.enableWriteBehind(60000, 1000);
+        RecordingCompletion completion = new RecordingCompletion();
+        this.geoFire.addNewLocation("a", FIRST, completion);
+        this.geoFire.removeLocation("a", GeoFire.cellOf(FIRST));
+        assertNotNull(completion.awaitError());
+        assertEquals(0, buffer.size());
+        assertEquals(1, buffer.getSupersededWriteCount());
+        buffer.flush();
+        assertEquals(0, buffer.getFlushCount());
+        assertEquals(0, this.backend.size());
+    }
+
+    private static Thread flushInBackground(final WriteBehindBuffer buffer) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                buffer.flush();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}